@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * Minimal microbenchmark harness: warms an operation up, times several
+ * rounds of it and prints the median throughput and the bytes allocated per
+ * operation. Enough to compare changes to the engine on a plain JVM.
+ *
+ * <p>This is not JMH: jars in libs/ are packaged into the APK, so JMH is
+ * not vendored. There is no forking, so every benchmark runs in the same
+ * JVM and the JIT profile left by earlier ones can skew later ones; run one
+ * at a time by name prefix to compare closely. Results only reach a
+ * volatile sink, so an operation must return something that depends on all
+ * of its work, or the JIT may drop part of it. Differences of a few percent
+ * are noise.
+ *
+ * <p>Needs a HotSpot JVM for per-thread allocation counters.
+ *
+ * @author czhang
+ */
+public final class Bench {
+  /**
+   * An operation to measure.
+   */
+  public interface Op {
+    /**
+     * Runs the operation {@code reps} times. Returns a value depending on
+     * the work done, so the JIT cannot drop it.
+     */
+    long run(int reps);
+  }
+
+  private static final long WARMUP_NANOS = 500000000L;
+  private static final long ROUND_NANOS = 200000000L;
+  private static final int ROUNDS = 5;
+
+  /** Consumes the results of operations. */
+  private static volatile long sink;
+
+  private Bench() {}
+
+  public static void printHeader() {
+    System.out.printf("%-24s %8s %14s %12s %10s%n", "benchmark", "careys", "ops/s", "ns/op",
+        "bytes/op");
+  }
+
+  /**
+   * Measures {@code op} and prints a line for it.
+   */
+  public static void run(String name, int careys, Op op) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    // Warm up, growing the batch until it takes a measurable time.
+    int reps = 1;
+    long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+    while (System.nanoTime() < warmupEnd) {
+      long start = System.nanoTime();
+      sink += op.run(reps);
+      if (System.nanoTime() - start < ROUND_NANOS / 20 && reps < Integer.MAX_VALUE / 2) {
+        reps *= 2;
+      }
+    }
+
+    double[] rates = new double[ROUNDS];
+    long allocated = 0;
+    long ops = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      long count = 0;
+      long bytesBefore = threads.getThreadAllocatedBytes(thread);
+      long start = System.nanoTime();
+      long end = start + ROUND_NANOS;
+      long now;
+      do {
+        sink += op.run(reps);
+        count += reps;
+        now = System.nanoTime();
+      } while (now < end);
+      allocated += threads.getThreadAllocatedBytes(thread) - bytesBefore;
+      ops += count;
+      rates[round] = count * 1e9 / (now - start);
+    }
+    Arrays.sort(rates);
+    double rate = rates[ROUNDS / 2];
+    System.out.printf("%-24s %8d %14.0f %12.1f %10.2f%n", name, careys, rate, 1e9 / rate,
+        (double) allocated / ops);
+  }
+}
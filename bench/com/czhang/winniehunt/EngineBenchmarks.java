@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks of the engine's hot paths for populations of 1 to 100k Careys:
+ * stepping the Careys, shape overlap tests, Winnie's collision checks,
+ * spawning, building a frame's draw list, and saving and restoring the
+ * world. An op is one pass over the population unless noted. See
+ * {@link Bench} for how far the numbers can be trusted.
+ *
+ * <p>Usage: {@code java -cp <classes>
+ * com.czhang.winniehunt.EngineBenchmarks [benchmark-name-prefix]}
+ *
+ * @author czhang
+ */
+public class EngineBenchmarks {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  private static final int[] POPULATIONS = new int[] {1, 10, 100, 1000, 10000, 100000};
+
+  /** Number of spawns between clearing the store, so it does not grow unbounded. */
+  private static final int SPAWNS_PER_CLEAR = 1024;
+
+  private static String filter = "";
+
+  public static void main(String[] args) {
+    if (args.length > 0) {
+      filter = args[0];
+    }
+    Bench.printHeader();
+    for (int careys : POPULATIONS) {
+      careyStep(careys);
+      overlaps(careys);
+      collision(careys);
+      drawListPrep(careys);
+      saveWorld(careys);
+      restoreWorld(careys);
+    }
+    spawnCarey();
+    setupTreats();
+  }
+
+  private static boolean selected(String name) {
+    return name.startsWith(filter);
+  }
+
+  /**
+   * Returns a world laid out with {@code careys} Careys.
+   */
+  private static GameWorld world(int careys) {
+    GameWorld world = new GameWorld(1, 8, 7, 5);
+    world.setSize(WIDTH, HEIGHT);
+    world.setupLayout();
+    for (int i = 1; i < careys; i++) {
+      world.addCarey();
+    }
+    return world;
+  }
+
+  /** Carey.step() for every Carey. */
+  private static void careyStep(int careys) {
+    if (!selected("careyStep")) {
+      return;
+    }
+    final EntityStore store = world(careys).getCareys();
+    Bench.run("careyStep", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        for (int r = 0; r < reps; r++) {
+          for (int i = 0; i < store.size(); i++) {
+            Carey.step(store, i, WIDTH, HEIGHT);
+          }
+        }
+        return store.getLeft(0);
+      }
+    });
+  }
+
+  /** OverlapableShape.overlaps() of Winnie against every Carey. */
+  private static void overlaps(int careys) {
+    if (!selected("overlaps")) {
+      return;
+    }
+    GameWorld world = world(careys);
+    final EntityStore store = world.getCareys();
+    final Winnie winnie = world.getWinnie();
+    final Carey view = new Carey(store, 0);
+    Bench.run("overlaps", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        long hits = 0;
+        for (int r = 0; r < reps; r++) {
+          for (int i = 0; i < store.size(); i++) {
+            if (winnie.overlaps(view.setIndex(i))) {
+              hits++;
+            }
+          }
+        }
+        return hits;
+      }
+    });
+  }
+
+  /**
+   * Winnie's treat and Carey checks through the grids, as run for every
+   * touch sample. An op is one check. Winnie hops between a few fixed
+   * points, so the treats there are soon eaten but the wave is practically
+   * never cleared and the population stays fixed.
+   */
+  private static void collision(int careys) {
+    if (!selected("collision")) {
+      return;
+    }
+    final GameWorld world = world(careys);
+    world.setState(GameWorld.State.RUNNING);
+    Bench.run("collision", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        long ends = 0;
+        for (int r = 0; r < reps; r++) {
+          world.moveWinnie((r & 3) * WIDTH / 4, ((r >> 2) & 3) * HEIGHT / 4);
+          if (world.getState() == GameWorld.State.END) {
+            world.setState(GameWorld.State.RUNNING);
+            ends++;
+          }
+        }
+        return ends;
+      }
+    });
+  }
+
+  /** Snapshotting the world and building the draw list of a frame from it. */
+  private static void drawListPrep(int careys) {
+    if (!selected("drawListPrep")) {
+      return;
+    }
+    final GameWorld world = world(careys);
+    world.step();
+    final WorldSnapshot snapshot = new WorldSnapshot();
+    final DrawList drawList = new DrawList();
+    Bench.run("drawListPrep", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        for (int r = 0; r < reps; r++) {
+          snapshot.copyFrom(world, 0, 1);
+          drawList.build(snapshot, 0.5f, 0, 8, 15);
+        }
+        return drawList.size();
+      }
+    });
+  }
+
+  /** WorldCodec.encode() of the whole world. */
+  private static void saveWorld(int careys) {
+    if (!selected("saveWorld")) {
+      return;
+    }
+    final GameWorld world = world(careys);
+    Bench.run("saveWorld", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        long bytes = 0;
+        for (int r = 0; r < reps; r++) {
+          bytes += WorldCodec.encode(world).length;
+        }
+        return bytes;
+      }
+    });
+  }
+
+  /** WorldCodec.decode() of the whole world. */
+  private static void restoreWorld(int careys) {
+    if (!selected("restoreWorld")) {
+      return;
+    }
+    final byte[] data = WorldCodec.encode(world(careys));
+    final GameWorld world = new GameWorld(2, 8, 7, 5);
+    Bench.run("restoreWorld", careys, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        try {
+          for (int r = 0; r < reps; r++) {
+            WorldCodec.decode(data, world);
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+        return world.getCareys().size();
+      }
+    });
+  }
+
+  /** Placing and adding a Carey, as addCarey() does. An op is one Carey. */
+  private static void spawnCarey() {
+    if (!selected("spawnCarey")) {
+      return;
+    }
+    final GameRandom rand = new GameRandom(1);
+    final SpawnPlacer placer = new SpawnPlacer(rand);
+    final EntityStore store = new EntityStore(Carey.SIZE_DP);
+    Bench.run("spawnCarey", 1, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        for (int r = 0; r < reps; r++) {
+          if (store.size() == SPAWNS_PER_CLEAR) {
+            store.clear();
+          }
+          placer.place(WIDTH, HEIGHT, Carey.SIZE_DP, WIDTH / 2, HEIGHT / 2, 100, null, null);
+          Carey.add(store, placer.getX(), placer.getY(), 0, rand);
+        }
+        return store.size();
+      }
+    });
+  }
+
+  /**
+   * Resetting the world, which lays out a full set of treats clear of each
+   * other. An op is one reset.
+   */
+  private static void setupTreats() {
+    if (!selected("setupTreats")) {
+      return;
+    }
+    final GameWorld world = world(1);
+    Bench.run("setupTreats", 1, new Bench.Op() {
+      @Override
+      public long run(int reps) {
+        for (int r = 0; r < reps; r++) {
+          world.reset();
+        }
+        return world.getTreats().getLeft(0);
+      }
+    });
+  }
+}
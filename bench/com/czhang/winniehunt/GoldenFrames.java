@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws a few fixed scenes with the {@link RasterRenderer} and compares
+ * them pixel for pixel against the golden images in {@code bench/golden}.
+ * Exits with status 1 if any frame differs, writing it next to its golden
+ * image as {@code <scene>.actual.png}. Run with {@code --update} to replace
+ * the golden images after an intended change to drawing.
+ *
+ * <p>The scenes use generated sprites rather than the app's images, so the
+ * frames only depend on this code.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.GoldenFrames [--update] [golden-dir]}
+ *
+ * @author czhang
+ */
+public class GoldenFrames {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  /** Sprite counts and index of the first sprite of each kind, as in SpriteLoader. */
+  static final int WINNIE_BASE = 0;
+  static final int CAREY_BASE = 8;
+  static final int TREAT_BASE = 15;
+  static final int SPRITE_COUNT = 20;
+  static final int SPRITE_SIZE = Carey.SIZE_DP;
+
+  public static void main(String[] args) throws IOException {
+    boolean update = false;
+    File dir = new File("bench/golden");
+    for (String arg : args) {
+      if (arg.equals("--update")) {
+        update = true;
+      } else {
+        dir = new File(arg);
+      }
+    }
+
+    RasterRenderer renderer = new RasterRenderer(WIDTH, HEIGHT, sprites(), SPRITE_SIZE);
+    int failures = 0;
+    failures += check(dir, "ready", scene(renderer, 1, 1, 0, GameWorld.State.READY), update);
+    failures += check(dir, "running", scene(renderer, 2, 50, 30, GameWorld.State.RUNNING),
+        update);
+    failures += check(dir, "crowd", scene(renderer, 3, 2000, 100, GameWorld.State.RUNNING),
+        update);
+    failures += check(dir, "end", scene(renderer, 4, 20, 10, GameWorld.State.END), update);
+    failures += check(dir, "paused", scene(renderer, 5, 20, 10, GameWorld.State.PAUSE), update);
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Draws a world with the seed and {@code careys} Careys, stepped
+   * {@code ticks} times and then put in {@code state}, halfway between its
+   * last two ticks. Returns the pixels.
+   */
+  private static int[] scene(RasterRenderer renderer, long seed, int careys, int ticks,
+      GameWorld.State state) {
+    GameWorld world = new GameWorld(seed, CAREY_BASE - WINNIE_BASE, TREAT_BASE - CAREY_BASE,
+        SPRITE_COUNT - TREAT_BASE);
+    world.setSize(WIDTH, HEIGHT);
+    world.setupLayout();
+    for (int i = 1; i < careys; i++) {
+      world.addCarey();
+    }
+    for (int i = 0; i < ticks; i++) {
+      world.step();
+    }
+    world.setState(state);
+
+    WorldSnapshot snapshot = new WorldSnapshot();
+    snapshot.copyFrom(world, 0, 1);
+    DrawList drawList = new DrawList();
+    drawList.build(snapshot, 0.5f, WINNIE_BASE, CAREY_BASE, TREAT_BASE);
+    FrameDrawer frameDrawer = new FrameDrawer("Tap to Start", "Caught Winnie", "FOREVERRR!!",
+        "Tap to Resume");
+    frameDrawer.draw(renderer, snapshot, drawList, null, 0);
+    renderer.present();
+    return renderer.getPixels().clone();
+  }
+
+  /**
+   * Compares the frame against its golden image, or replaces the golden
+   * image if updating. Returns 1 if it failed.
+   */
+  private static int check(File dir, String name, int[] pixels, boolean update)
+      throws IOException {
+    File golden = new File(dir, name + ".png");
+    if (update) {
+      write(pixels, golden);
+      System.out.printf("%-8s updated%n", name);
+      return 0;
+    }
+    if (!golden.exists()) {
+      System.out.printf("%-8s FAIL: no golden image %s%n", name, golden);
+      return 1;
+    }
+
+    BufferedImage image = ImageIO.read(golden);
+    int differing = 0;
+    if (image.getWidth() != WIDTH || image.getHeight() != HEIGHT) {
+      differing = pixels.length;
+    } else {
+      int[] expected = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+      for (int i = 0; i < pixels.length; i++) {
+        if (expected[i] != pixels[i]) {
+          differing++;
+        }
+      }
+    }
+    if (differing == 0) {
+      System.out.printf("%-8s ok%n", name);
+      return 0;
+    }
+    File actual = new File(dir, name + ".actual.png");
+    write(pixels, actual);
+    System.out.printf("%-8s FAIL: %d pixels differ, see %s%n", name, differing, actual);
+    return 1;
+  }
+
+  private static void write(int[] pixels, File file) throws IOException {
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+    ImageIO.write(image, "png", file);
+  }
+
+  /**
+   * Returns a disc of a different color for each sprite, with a half
+   * transparent rim so blending is covered too.
+   */
+  static int[][] sprites() {
+    int[][] sprites = new int[SPRITE_COUNT][SPRITE_SIZE * SPRITE_SIZE];
+    int center = SPRITE_SIZE / 2;
+    long outer = (long) center * center;
+    long inner = (long) (center - 3) * (center - 3);
+    for (int s = 0; s < SPRITE_COUNT; s++) {
+      int rgb = ((s * 97 + 40) & 0xff) << 16 | ((s * 53 + 120) & 0xff) << 8 | ((s * 29 + 200) & 0xff);
+      for (int y = 0; y < SPRITE_SIZE; y++) {
+        for (int x = 0; x < SPRITE_SIZE; x++) {
+          long d = (long) (x - center) * (x - center) + (long) (y - center) * (y - center);
+          int alpha = d < inner ? 0xff : d < outer ? 0x80 : 0;
+          sprites[s][y * SPRITE_SIZE + x] = alpha << 24 | rgb;
+        }
+      }
+    }
+    return sprites;
+  }
+}
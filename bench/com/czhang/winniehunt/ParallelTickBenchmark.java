@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Measures ticks per second with large Carey populations for increasing
+ * numbers of threads, to check that the parallel step scales and to pick
+ * the threshold below which stepping stays serial.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.ParallelTickBenchmark [maxThreads]}
+ *
+ * @author czhang
+ */
+public class ParallelTickBenchmark {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  private static final int[] POPULATIONS = new int[] {1000, 4000, 16000, 64000};
+
+  private static final long WARMUP_NANOS = 1000000000L;
+  private static final long MEASURED_NANOS = 2000000000L;
+
+  public static void main(String[] args) {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+        : Runtime.getRuntime().availableProcessors();
+
+    System.out.printf("%8s %8s %12s %8s%n", "careys", "threads", "ticks/s", "speedup");
+    for (int careys : POPULATIONS) {
+      double serial = 0;
+      for (int threads = 1; threads <= maxThreads; threads *= 2) {
+        double rate = measure(careys, threads);
+        if (threads == 1) {
+          serial = rate;
+        }
+        System.out.printf("%8d %8d %12.0f %8.2f%n", careys, threads, rate, rate / serial);
+      }
+    }
+  }
+
+  /**
+   * Returns the ticks per second of a world with {@code careys} Careys,
+   * stepped on {@code threads} threads. Winnie is kept out of the game so
+   * the population stays fixed.
+   */
+  private static double measure(int careys, int threads) {
+    GameWorld world = new GameWorld(8, 7, 5);
+    world.setSize(WIDTH, HEIGHT);
+    world.setupLayout();
+    for (int i = 1; i < careys; i++) {
+      world.addCarey();
+    }
+    world.setParallelism(threads, 0);
+
+    run(world, WARMUP_NANOS);
+    long start = System.nanoTime();
+    long ticks = run(world, MEASURED_NANOS);
+    double rate = ticks * 1e9 / (System.nanoTime() - start);
+    world.setParallelism(1, 0);
+    return rate;
+  }
+
+  private static long run(GameWorld world, long nanos) {
+    long end = System.nanoTime() + nanos;
+    long ticks = 0;
+    while (System.nanoTime() < end) {
+      for (int i = 0; i < 100; i++) {
+        world.step();
+      }
+      ticks += 100;
+    }
+    return ticks;
+  }
+}
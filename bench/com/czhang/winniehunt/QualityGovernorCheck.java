@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Feeds the {@link QualityGovernor} scripted frame and tick times and checks
+ * the quality levels it picks: lowered under sustained load, kept through
+ * short spikes, raised again only after lasting headroom, and steady in
+ * between. A busy source must not be hidden by a light one. Exits with
+ * status 1 if any scenario fails.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.QualityGovernorCheck}
+ *
+ * @author czhang
+ */
+public class QualityGovernorCheck {
+  /** Budget of every sample, a frame at 60 frames per second. */
+  private static final long BUDGET = 1000000000L / 60;
+
+  private static int failures;
+
+  public static void main(String[] args) {
+    QualityGovernor governor = new QualityGovernor();
+    feed(governor, 20, 0.4f, 0, 0);
+    check("light", governor, QualityGovernor.Level.HIGH);
+
+    governor = new QualityGovernor();
+    feed(governor, 1, 1.2f, 0, 0);
+    check("heavy 1", governor, QualityGovernor.Level.MEDIUM);
+    // The window after a change is ignored.
+    feed(governor, 1, 1.2f, 0, 0);
+    check("heavy 2", governor, QualityGovernor.Level.MEDIUM);
+    feed(governor, 1, 1.2f, 0, 0);
+    check("heavy 3", governor, QualityGovernor.Level.LOW);
+    feed(governor, 20, 1.2f, 0, 0);
+    check("heavy", governor, QualityGovernor.Level.LOW);
+
+    // Back down to a light load: several windows with headroom per step,
+    // plus one settling after each step.
+    feed(governor, QualityGovernor.RAISE_WINDOWS - 1, 0.3f, 0, 0);
+    check("recover 1", governor, QualityGovernor.Level.LOW);
+    feed(governor, 1, 0.3f, 0, 0);
+    check("recover 2", governor, QualityGovernor.Level.MEDIUM);
+    feed(governor, QualityGovernor.RAISE_WINDOWS + 1, 0.3f, 0, 0);
+    check("recover", governor, QualityGovernor.Level.HIGH);
+
+    // A few slow frames per window, e.g. garbage collection, are tolerated.
+    governor = new QualityGovernor();
+    feed(governor, 20, 0.4f, QualityGovernor.WINDOW / 10, 2f);
+    check("spikes", governor, QualityGovernor.Level.HIGH);
+
+    // Between the thresholds, neither lowered nor raised.
+    governor = new QualityGovernor();
+    feed(governor, 1, 1.2f, 0, 0);
+    feed(governor, 50, 0.7f, 0, 0);
+    check("steady", governor, QualityGovernor.Level.MEDIUM);
+
+    // Occasional light windows don't add up to raising.
+    governor = new QualityGovernor();
+    feed(governor, 1, 1.2f, 0, 0);
+    for (int i = 0; i < 20; i++) {
+      feed(governor, QualityGovernor.RAISE_WINDOWS - 1, 0.3f, 0, 0);
+      feed(governor, 1, 0.7f, 0, 0);
+    }
+    check("flapping", governor, QualityGovernor.Level.MEDIUM);
+
+    // Slow ticks are not hidden by many more light frames.
+    governor = new QualityGovernor();
+    feedMixed(governor, 2 * 10 * QualityGovernor.WINDOW, 0.4f, 10, 1.2f);
+    check("slow ticks", governor, QualityGovernor.Level.MEDIUM);
+
+    // Raising needs headroom in the ticks as well as the frames.
+    governor = new QualityGovernor();
+    feed(governor, 1, 1.2f, 0, 0);
+    feedMixed(governor, 20 * QualityGovernor.WINDOW, 0.3f, 1, 0.7f);
+    check("busy ticks", governor, QualityGovernor.Level.MEDIUM);
+    feedMixed(governor, (QualityGovernor.RAISE_WINDOWS + 1) * QualityGovernor.WINDOW, 0.3f, 1,
+        0.3f);
+    check("idle ticks", governor, QualityGovernor.Level.HIGH);
+
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Records {@code windows} windows of frames and ticks at {@code load} times
+   * the budget, the first {@code spikes} of each at {@code spikeLoad} instead.
+   */
+  private static void feed(QualityGovernor governor, int windows, float load, int spikes,
+      float spikeLoad) {
+    for (int w = 0; w < windows; w++) {
+      for (int i = 0; i < QualityGovernor.WINDOW; i++) {
+        long busy = (long) ((i < spikes ? spikeLoad : load) * BUDGET);
+        governor.record(QualityGovernor.Source.FRAME, busy, BUDGET);
+        governor.record(QualityGovernor.Source.TICK, busy, BUDGET);
+      }
+    }
+  }
+
+  /**
+   * Records {@code frames} frames at {@code frameLoad} times the budget, and
+   * a tick at {@code tickLoad} after every {@code framesPerTick} of them.
+   */
+  private static void feedMixed(QualityGovernor governor, int frames, float frameLoad,
+      int framesPerTick, float tickLoad) {
+    for (int i = 1; i <= frames; i++) {
+      governor.record(QualityGovernor.Source.FRAME, (long) (frameLoad * BUDGET), BUDGET);
+      if (i % framesPerTick == 0) {
+        governor.record(QualityGovernor.Source.TICK, (long) (tickLoad * BUDGET), BUDGET);
+      }
+    }
+  }
+
+  private static void check(String name, QualityGovernor governor,
+      QualityGovernor.Level expected) {
+    QualityGovernor.Level level = governor.getLevel();
+    if (level == expected) {
+      System.out.printf("%-10s ok%n", name);
+    } else {
+      System.out.printf("%-10s FAIL: %s, expected %s%n", name, level, expected);
+      failures++;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Benchmarks drawing a whole frame with the {@link RasterRenderer} for
+ * populations of 1k to 50k Careys: building the draw list, then drawing the
+ * background, every sprite and the HUD. An op is one frame.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.RenderBenchmark}
+ *
+ * @author czhang
+ */
+public class RenderBenchmark {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  private static final int[] POPULATIONS = new int[] {1000, 5000, 10000, 50000};
+
+  public static void main(String[] args) {
+    final RasterRenderer renderer =
+        new RasterRenderer(WIDTH, HEIGHT, GoldenFrames.sprites(), GoldenFrames.SPRITE_SIZE);
+    final FrameStats stats = new FrameStats();
+    Bench.printHeader();
+    for (int careys : POPULATIONS) {
+      GameWorld world = new GameWorld(1, 8, 7, 5);
+      world.setSize(WIDTH, HEIGHT);
+      world.setupLayout();
+      for (int i = 1; i < careys; i++) {
+        world.addCarey();
+      }
+      world.step();
+
+      final WorldSnapshot snapshot = new WorldSnapshot();
+      snapshot.copyFrom(world, 0, 1);
+      final DrawList drawList = new DrawList();
+      final FrameDrawer frameDrawer = new FrameDrawer("Tap to Start", "Caught Winnie",
+          "FOREVERRR!!", "Tap to Resume");
+      Bench.run("rasterFrame", careys, new Bench.Op() {
+        @Override
+        public long run(int reps) {
+          for (int r = 0; r < reps; r++) {
+            drawList.build(snapshot, 0.5f, GoldenFrames.WINNIE_BASE, GoldenFrames.CAREY_BASE,
+                GoldenFrames.TREAT_BASE);
+            frameDrawer.draw(renderer, snapshot, drawList, stats, r);
+            renderer.present();
+          }
+          return renderer.getPixels()[WIDTH * HEIGHT / 2];
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Plays back a recorded session (e.g. {@code last.replay} pulled from the
+ * app's files directory) headlessly at full speed. Reports the slowest
+ * ticks, to find what made a session stutter, and exits with status 1 if
+ * the playback diverged from the recording.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.ReplayRunner <replay> [threads]}
+ *
+ * @author czhang
+ */
+public class ReplayRunner {
+  /** Number of slowest ticks reported. */
+  private static final int SLOWEST = 5;
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: ReplayRunner <replay> [threads]");
+      System.exit(2);
+    }
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+    long[] slowestNanos = new long[SLOWEST];
+    long[] slowestTicks = new long[SLOWEST];
+    long start;
+    ReplayPlayer player;
+    try {
+      player = new ReplayPlayer(in);
+      player.getWorld().setParallelism(threads, GameWorld.DEFAULT_PARALLEL_THRESHOLD);
+      start = System.nanoTime();
+      long before = start;
+      while (player.step()) {
+        long now = System.nanoTime();
+        record(player.getTicks(), now - before, slowestTicks, slowestNanos);
+        before = now;
+      }
+    } finally {
+      in.close();
+    }
+    long elapsed = System.nanoTime() - start;
+    GameWorld world = player.getWorld();
+    world.setParallelism(1, 0);
+
+    System.out.printf("seed %d, %d ticks in %.1f ms (%.0f ticks/s)%n", player.getSeed(),
+        player.getTicks(), elapsed / 1e6, player.getTicks() * 1e9 / elapsed);
+    System.out.printf("final: state %s, wave %d, score %d, %d careys%n", world.getState(),
+        world.getWave(), world.getScore(), world.getCareys().size());
+    System.out.println("slowest ticks:");
+    for (int i = 0; i < SLOWEST && slowestNanos[i] > 0; i++) {
+      System.out.printf("  tick %d: %.3f ms%n", slowestTicks[i], slowestNanos[i] / 1e6);
+    }
+    if (player.getDivergedAt() >= 0) {
+      System.out.println("FAIL: diverged from the recording by tick " + player.getDivergedAt());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Keeps the slowest ticks, sorted from slowest.
+   */
+  private static void record(long tick, long nanos, long[] ticks, long[] slowest) {
+    int i = slowest.length;
+    while (i > 0 && slowest[i - 1] < nanos) {
+      i--;
+    }
+    if (i == slowest.length) {
+      return;
+    }
+    System.arraycopy(slowest, i, slowest, i + 1, slowest.length - i - 1);
+    System.arraycopy(ticks, i, ticks, i + 1, ticks.length - i - 1);
+    slowest[i] = nanos;
+    ticks[i] = tick;
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Measures the cost of placing a new shape as the board fills up: Careys,
+ * which only keep clear of Winnie, for growing populations, and treats,
+ * which also avoid each other, for a growing fraction of the board covered.
+ * Both should stay flat.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.SpawnBenchmark}
+ *
+ * @author czhang
+ */
+public class SpawnBenchmark {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  private static final int[] CAREY_POPULATIONS = new int[] {1, 100, 1000, 10000, 100000};
+
+  /** Percentages of the board covered by treats. */
+  private static final int[] TREAT_COVERAGE = new int[] {0, 25, 50, 75, 90, 100};
+
+  private static final int PLACEMENTS = 200000;
+
+  public static void main(String[] args) {
+    System.out.printf("%-28s %10s %10s%n", "careys on board", "ns/place", "fallbacks");
+    for (int population : CAREY_POPULATIONS) {
+      GameWorld world = new GameWorld(8, 7, 5);
+      world.setSize(WIDTH, HEIGHT);
+      world.setupLayout();
+      for (int i = 1; i < population; i++) {
+        world.addCarey();
+      }
+      // Time the placement the way addCarey() does it, without growing the store.
+      Winnie winnie = world.getWinnie();
+      SpawnPlacer placer = new SpawnPlacer(new GameRandom(1));
+      measure(String.valueOf(world.getCareys().size()), placer, winnie, 100, null, null);
+    }
+
+    System.out.println();
+    System.out.printf("%-28s %10s %10s%n", "treat coverage", "ns/place", "fallbacks");
+    for (int coverage : TREAT_COVERAGE) {
+      EntityStore treats = new EntityStore(Treat.SIZE_DP);
+      SpatialGrid grid = new SpatialGrid(Treat.SIZE_DP);
+      grid.resize(WIDTH, HEIGHT);
+      // Lay treats out on a lattice until the requested area is covered.
+      int cells = (WIDTH / Treat.SIZE_DP) * (HEIGHT / Treat.SIZE_DP);
+      int count = cells * coverage / 100;
+      for (int i = 0; i < count; i++) {
+        int x = (i % (WIDTH / Treat.SIZE_DP)) * Treat.SIZE_DP;
+        int y = (i / (WIDTH / Treat.SIZE_DP)) * Treat.SIZE_DP;
+        grid.insert(treats.add(x, y, 0, 0, 0), x, y);
+      }
+      Winnie winnie = new Winnie((WIDTH - Winnie.SIZE_DP) / 2, (HEIGHT - Winnie.SIZE_DP) / 2, 0);
+      SpawnPlacer placer = new SpawnPlacer(new GameRandom(1));
+      measure(coverage + "% (" + count + " treats)", placer, winnie, Winnie.SIZE_DP, grid, treats);
+    }
+  }
+
+  private static void measure(String label, SpawnPlacer placer, Winnie winnie, int radius,
+      SpatialGrid grid, EntityStore occupants) {
+    // Warm up, then measure.
+    place(placer, winnie, radius, grid, occupants);
+    long start = System.nanoTime();
+    int fallbacks = place(placer, winnie, radius, grid, occupants);
+    long nanos = System.nanoTime() - start;
+    System.out.printf("%-28s %10.1f %9.1f%%%n", label, (double) nanos / PLACEMENTS,
+        100.0 * fallbacks / PLACEMENTS);
+  }
+
+  private static int place(SpawnPlacer placer, Winnie winnie, int radius, SpatialGrid grid,
+      EntityStore occupants) {
+    int fallbacks = 0;
+    for (int i = 0; i < PLACEMENTS; i++) {
+      if (!placer.place(WIDTH, HEIGHT, Carey.SIZE_DP, winnie.getCenterX(), winnie.getCenterY(),
+          radius, grid, occupants)) {
+        fallbacks++;
+      }
+    }
+    return fallbacks;
+  }
+}
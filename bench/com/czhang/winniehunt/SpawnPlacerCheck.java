@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Checks that a spawn pushed out of the clear zone of the
+ * {@link SpawnPlacer} lands outside it at every angle and radius, so the
+ * placer only falls back to a corner when the board is too small. Exits
+ * with status 1 if any position is inside.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.SpawnPlacerCheck}
+ *
+ * @author czhang
+ */
+public class SpawnPlacerCheck {
+  /** Angles tried per turn. */
+  private static final int ANGLES = 3600;
+
+  private static final int MAX_RADIUS = 400;
+
+  public static void main(String[] args) {
+    int failures = 0;
+    for (int radius = 1; radius <= MAX_RADIUS; radius++) {
+      long radiusSquared = (long) radius * radius;
+      for (int i = 0; i < ANGLES; i++) {
+        double angle = 2 * Math.PI * i / ANGLES;
+        int dx = SpawnPlacer.edgeOffset(radius, StrictMath.cos(angle));
+        int dy = SpawnPlacer.edgeOffset(radius, StrictMath.sin(angle));
+        if ((long) dx * dx + (long) dy * dy < radiusSquared) {
+          if (failures < 10) {
+            System.out.printf("radius %d at %.1f degrees: FAIL: (%d, %d) inside%n", radius,
+                Math.toDegrees(angle), dx, dy);
+          }
+          failures++;
+        }
+      }
+    }
+    System.out.printf("%d radii x %d angles, %d inside%n", MAX_RADIUS, ANGLES, failures);
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+}
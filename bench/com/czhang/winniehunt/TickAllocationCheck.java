@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Runs the simulation headlessly in the RUNNING state and counts the bytes
+ * allocated by each tick. Exits with status 1 if a steady-state tick
+ * allocates anything, so it can be run on a build box to catch regressions.
+ *
+ * <p>Needs a HotSpot JVM for per-thread allocation counters. Usage:
+ * {@code java -cp <classes> com.czhang.winniehunt.TickAllocationCheck [careys [threads]]}
+ *
+ * @author czhang
+ */
+public class TickAllocationCheck {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+
+  /** Ticks run before measuring, so capacities have grown and code is compiled. */
+  private static final int WARMUP_TICKS = 50000;
+  private static final int MEASURED_TICKS = 100000;
+
+  public static void main(String[] args) {
+    int numCareys = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+    GameWorld world = new GameWorld(8, 7, 5);
+    world.setParallelism(numThreads, 0);
+    world.setSize(WIDTH, HEIGHT);
+    world.setupLayout();
+    for (int i = 1; i < numCareys; i++) {
+      world.addCarey();
+    }
+    world.setState(GameWorld.State.RUNNING);
+
+    for (int i = 0; i < WARMUP_TICKS; i++) {
+      tick(world, i);
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    // Calibrate the cost of reading the counter itself.
+    long overhead = -threads.getThreadAllocatedBytes(thread) + threads.getThreadAllocatedBytes(thread);
+
+    // Ticks that add a Carey may grow the stores, which is amortized rather
+    // than steady-state allocation, so only the other ticks are held to zero.
+    long allocated = 0;
+    int allocatingTicks = 0;
+    int growthTicks = 0;
+    for (int i = WARMUP_TICKS; i < WARMUP_TICKS + MEASURED_TICKS; i++) {
+      int careysBefore = world.getCareys().size();
+      long before = threads.getThreadAllocatedBytes(thread);
+      tick(world, i);
+      long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+      if (world.getCareys().size() != careysBefore) {
+        growthTicks++;
+      } else if (bytes > 0) {
+        allocated += bytes;
+        allocatingTicks++;
+      }
+    }
+
+    System.out.printf("%d careys, %d ticks (%d with growth): %d bytes allocated in %d ticks%n",
+        world.getCareys().size(), MEASURED_TICKS, growthTicks, allocated, allocatingTicks);
+    world.setParallelism(1, 0);
+    if (allocated > 0) {
+      System.out.println("FAIL: steady-state ticks must not allocate");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Steps the world once, moving Winnie in a circle and every so often onto
+   * a treat so that waves get cleared, and carrying on whenever she is caught.
+   */
+  private static void tick(GameWorld world, int i) {
+    EntityStore treats = world.getTreats();
+    if (i % 10 == 0 && treats.size() > 0) {
+      world.moveWinnie(treats.getLeft(0) + Treat.SIZE_DP / 2, treats.getTop(0) + Treat.SIZE_DP / 2);
+    } else {
+      int x = WIDTH / 2 + (int) (WIDTH / 3 * Math.cos(i * 0.01));
+      int y = HEIGHT / 2 + (int) (HEIGHT / 3 * Math.sin(i * 0.01));
+      world.moveWinnie(x, y);
+    }
+    world.step();
+    if (world.getState() == GameWorld.State.END) {
+      world.setState(GameWorld.State.RUNNING);
+    }
+  }
+}
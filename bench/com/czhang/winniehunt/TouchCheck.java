@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Plays scripted touches on many seeded worlds and checks that the press
+ * starting or resuming a game puts Winnie under the finger, so the short
+ * drag that follows only reaches what is next to the finger. Exits with
+ * status 1 if any game fails.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.TouchCheck [seeds]}
+ *
+ * @author czhang
+ */
+public class TouchCheck {
+  private static final int WIDTH = 480;
+  private static final int HEIGHT = 800;
+  private static final int CAREYS = 5;
+
+  /** Length of the drag after each press, in pixels. */
+  private static final int DRAG = 2;
+
+  private static int failures;
+
+  public static void main(String[] args) {
+    int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    for (long seed = 0; seed < seeds; seed++) {
+      GameWorld world = new GameWorld(seed, 8, 7, 5);
+      world.setSize(WIDTH, HEIGHT);
+      world.setupLayout();
+      for (int i = 1; i < CAREYS; i++) {
+        world.addCarey();
+      }
+
+      // Start the game with a tap in a corner, away from Winnie.
+      pressAndDrag("start", seed, world, 20, 20);
+      if (world.getState() != GameWorld.State.RUNNING) {
+        continue;
+      }
+
+      // Pause, then resume with a tap in the opposite corner.
+      world.pause();
+      pressAndDrag("resume", seed, world, WIDTH - 20, HEIGHT - 20);
+    }
+
+    System.out.printf("%d seeds, %d failures%n", seeds, failures);
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Presses at x,y then drags a little to the right, and checks that
+   * Winnie is under the finger and only ate or was caught by shapes that
+   * were within reach of it.
+   */
+  private static void pressAndDrag(String name, long seed, GameWorld world, int x, int y) {
+    world.touch(TouchQueue.ACTION_DOWN, x, y, 0);
+    Winnie winnie = world.getWinnie();
+    if (winnie.getLeft() != x - winnie.getSize() / 2
+        || winnie.getTop() != y - winnie.getSize() / 2) {
+      fail(name, seed, "Winnie not moved to the press");
+      return;
+    }
+    if (world.getState() != GameWorld.State.RUNNING) {
+      // Pressed onto a Carey.
+      return;
+    }
+
+    // Anything reached by the drag overlaps the box it swept.
+    int left = winnie.getLeft();
+    int top = winnie.getTop();
+    int right = left + winnie.getSize() + DRAG;
+    int bottom = top + winnie.getSize();
+    int reachableTreats = count(world.getTreats(), left, top, right, bottom);
+    int reachableCareys = count(world.getCareys(), left, top, right, bottom);
+
+    int score = world.getScore();
+    world.touch(TouchQueue.ACTION_MOVE, x + DRAG, y, 0);
+    if (world.getScore() - score > reachableTreats) {
+      fail(name, seed, "ate " + (world.getScore() - score) + " treats out of reach");
+    }
+    if (world.getState() == GameWorld.State.END && reachableCareys == 0) {
+      fail(name, seed, "caught by a Carey out of reach");
+    }
+  }
+
+  /**
+   * Returns how many shapes in the store overlap the box.
+   */
+  private static int count(EntityStore store, int left, int top, int right, int bottom) {
+    int size = store.getEntitySize();
+    int n = 0;
+    for (int i = 0; i < store.size(); i++) {
+      if (store.getLeft(i) < right && store.getLeft(i) + size > left
+          && store.getTop(i) < bottom && store.getTop(i) + size > top) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  private static void fail(String name, long seed, String message) {
+    if (failures < 10) {
+      System.out.printf("seed %d, %s: FAIL: %s%n", seed, name, message);
+    }
+    failures++;
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.IOException;
+
+/**
+ * Saves and restores worlds with the {@link WorldCodec} and checks that a
+ * restored world plays on exactly like the original, and that truncated or
+ * corrupt saves are rejected. Exits with status 1 if any case fails.
+ *
+ * <p>Usage: {@code java -cp <classes> com.czhang.winniehunt.WorldCodecCheck}
+ *
+ * @author czhang
+ */
+public class WorldCodecCheck {
+  /**
+   * Offsets of the state and the state before pause in a save: after the
+   * magic, the version, three sprite counts of one byte each and the random
+   * state.
+   */
+  private static final int STATE_OFFSET = 4 + 1 + 3 + 8;
+  private static final int STATE_BEFORE_PAUSE_OFFSET = STATE_OFFSET + 1;
+
+  private static int failures;
+
+  public static void main(String[] args) {
+    GameWorld world = playedWorld();
+    world.pause();
+    byte[] paused = WorldCodec.encode(world);
+    checkRoundTrip("paused", world, paused);
+
+    // Paused and resumed, so the state before pause is left over.
+    world = playedWorld();
+    world.pause();
+    world.unpause();
+    checkRoundTrip("running", world, WorldCodec.encode(world));
+
+    byte[] truncated = new byte[paused.length - 3];
+    System.arraycopy(paused, 0, truncated, 0, truncated.length);
+    checkRejected("truncated", truncated, newWorld());
+    checkRejected("images", paused, new GameWorld(1, 8, 6, 5));
+
+    byte[] corrupt = paused.clone();
+    corrupt[STATE_BEFORE_PAUSE_OFFSET] = 0;
+    checkRejected("no before", corrupt, newWorld());
+    corrupt[STATE_BEFORE_PAUSE_OFFSET] = (byte) (GameWorld.State.PAUSE.ordinal() + 1);
+    checkRejected("paused twice", corrupt, newWorld());
+    corrupt = paused.clone();
+    corrupt[STATE_OFFSET] = (byte) GameWorld.State.RUNNING.ordinal();
+    checkRejected("not paused", corrupt, newWorld());
+
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static GameWorld newWorld() {
+    return new GameWorld(99, 8, 7, 5);
+  }
+
+  /**
+   * Returns a world that has been played for a while, with Winnie moving
+   * around and the game restarted whenever she is caught.
+   */
+  private static GameWorld playedWorld() {
+    GameWorld world = new GameWorld(5, 8, 7, 5);
+    world.setSize(480, 800);
+    world.setupLayout();
+    for (int i = 0; i < 100; i++) {
+      world.addCarey();
+    }
+    world.setState(GameWorld.State.RUNNING);
+    for (int i = 0; i < 300; i++) {
+      play(world, i);
+    }
+    return world;
+  }
+
+  private static void play(GameWorld world, int i) {
+    world.moveWinnie(100 + i * 7 % 300, 100 + i * 3 % 600);
+    world.step();
+    if (world.getState() == GameWorld.State.END) {
+      world.setState(GameWorld.State.RUNNING);
+    }
+  }
+
+  /**
+   * Restores {@code data}, saved from {@code world}, and checks the copy
+   * matches the world and keeps matching it as both are played.
+   */
+  private static void checkRoundTrip(String name, GameWorld world, byte[] data) {
+    GameWorld copy = newWorld();
+    try {
+      WorldCodec.decode(data, copy);
+    } catch (IOException e) {
+      fail(name, "rejected: " + e.getMessage());
+      return;
+    }
+    if (copy.getState() != world.getState() || copy.checksum() != world.checksum()) {
+      fail(name, "restored world differs");
+      return;
+    }
+    world.unpause();
+    copy.unpause();
+    for (int i = 0; i < 1000; i++) {
+      play(world, i);
+      play(copy, i);
+      if (copy.checksum() != world.checksum()) {
+        fail(name, "diverged after " + i + " steps");
+        return;
+      }
+    }
+    System.out.printf("%-12s ok, %d bytes%n", name, data.length);
+  }
+
+  private static void checkRejected(String name, byte[] data, GameWorld world) {
+    try {
+      WorldCodec.decode(data, world);
+      fail(name, "accepted");
+    } catch (IOException e) {
+      System.out.printf("%-12s ok, rejected: %s%n", name, e.getMessage());
+    }
+  }
+
+  private static void fail(String name, String message) {
+    System.out.printf("%-12s FAIL: %s%n", name, message);
+    failures++;
+  }
+}
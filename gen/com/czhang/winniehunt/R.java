@@ -55,12 +55,19 @@ public final class R {
         public static final int alert_hi=0x7f050006;
         public static final int app_name=0x7f050000;
         public static final int instructions_text=0x7f050004;
+        public static final int menu_dirty_rendering=0x7f050010;
+        public static final int menu_dump_stats=0x7f05000c;
         public static final int menu_hi=0x7f050005;
         public static final int menu_settings=0x7f050001;
+        public static final int menu_stats=0x7f05000b;
         public static final int message_done1=0x7f050008;
         public static final int message_done2=0x7f050009;
+        public static final int message_loading=0x7f05000f;
+        public static final int message_paused=0x7f05000a;
         public static final int message_ready=0x7f050007;
         public static final int start_text=0x7f050003;
+        public static final int stats_dump_failed=0x7f05000e;
+        public static final int stats_dumped=0x7f05000d;
         public static final int title_activity_main=0x7f050002;
     }
     public static final class style {
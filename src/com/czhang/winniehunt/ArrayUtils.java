@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Copies of primitive arrays for growing the engine's buffers. Stands in for
+ * {@code java.util.Arrays.copyOf()}, which needs API level 9 while the game
+ * runs on 8.
+ *
+ * @author czhang
+ */
+final class ArrayUtils {
+  private ArrayUtils() {}
+
+  /**
+   * Returns a copy of {@code array} truncated or padded with zeros to
+   * {@code length}.
+   */
+  static int[] copyOf(int[] array, int length) {
+    int[] copy = new int[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  /**
+   * Returns a copy of {@code array} truncated or padded with false to
+   * {@code length}.
+   */
+  static boolean[] copyOf(boolean[] array, int length) {
+    boolean[] copy = new boolean[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+
+  /**
+   * Returns a copy of {@code array} truncated or padded with zeros to
+   * {@code length}.
+   */
+  static byte[] copyOf(byte[] array, int length) {
+    byte[] copy = new byte[length];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+    return copy;
+  }
+}
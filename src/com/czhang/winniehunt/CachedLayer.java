@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+
+/**
+ * Part of a frame, e.g. some text, that is painted once into an offscreen
+ * bitmap and then copied onto every frame until it changes, instead of being
+ * laid out and rasterized again each time.
+ *
+ * <p>The bitmap only grows, so changing the size of the layer does not
+ * allocate once it has been as large before. Not thread safe.
+ *
+ * @author czhang
+ */
+public class CachedLayer {
+  /**
+   * Paints the content of the layer.
+   */
+  public interface Painter {
+    /**
+     * Paints onto {@code canvas}, which is cleared, within 0,0 to
+     * width,height.
+     */
+    void paint(Canvas canvas, int width, int height);
+  }
+
+  private final Painter painter;
+
+  private Bitmap bitmap;
+  private Canvas canvas;
+
+  /** Size of the layer, at most the size of {@link #bitmap}. */
+  private int width, height;
+
+  /** If {@link #bitmap} holds what the painter would paint now. */
+  private boolean valid;
+
+  /** Source and destination of the copy onto the frame. */
+  private final Rect src = new Rect();
+  private final Rect dst = new Rect();
+
+  public CachedLayer(Painter painter) {
+    this.painter = painter;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Sets the size of the layer and has it painted again before it is next
+   * drawn.
+   */
+  public void setSize(int width, int height) {
+    this.width = width;
+    this.height = height;
+    valid = false;
+  }
+
+  /**
+   * Draws the layer onto {@code target} with its top left at left,top,
+   * painting it first if needed. Does nothing if the layer is empty.
+   */
+  public void draw(Canvas target, int left, int top) {
+    if (width <= 0 || height <= 0) {
+      return;
+    }
+    if (!valid) {
+      repaint();
+    }
+    src.set(0, 0, width, height);
+    dst.set(left, top, left + width, top + height);
+    target.drawBitmap(bitmap, src, dst, null);
+  }
+
+  /**
+   * Frees the bitmap, e.g. because the surface changed size and the layer
+   * will be sized again. The layer stays usable.
+   */
+  public void recycle() {
+    if (bitmap != null) {
+      bitmap.recycle();
+      bitmap = null;
+      canvas = null;
+    }
+    valid = false;
+  }
+
+  private void repaint() {
+    if (bitmap == null || bitmap.getWidth() < width || bitmap.getHeight() < height) {
+      int bitmapWidth = Math.max(width, bitmap == null ? 0 : bitmap.getWidth());
+      int bitmapHeight = Math.max(height, bitmap == null ? 0 : bitmap.getHeight());
+      recycle();
+      bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+      canvas = new Canvas(bitmap);
+    } else {
+      bitmap.eraseColor(Color.TRANSPARENT);
+    }
+    painter.paint(canvas, width, height);
+    valid = true;
+  }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Map;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Paint.Align;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Renderer drawing onto an Android Canvas: sprites from a
+ * {@link SpriteAtlas}, and text rasterized into a {@link CachedLayer} per
+ * {@link TextBlock}, painted again only when the block changes.
+ *
+ * <p>Call {@link #begin(Canvas)} before drawing each frame.
+ *
+ * @author czhang
+ */
+public class CanvasRenderer implements Renderer {
+  /** Room left around text in layers for anti-aliasing. */
+  private static final int TEXT_PADDING = 2;
+
+  /**
+   * The rasterized text of a block.
+   */
+  private static class TextLayer implements CachedLayer.Painter {
+    final TextBlock text;
+    final Paint paint;
+    final CachedLayer layer;
+
+    /** Version of the text the layer was sized for. */
+    int version = -1;
+
+    /** Distance from the top of the layer to the first baseline. */
+    int ascent;
+
+    TextLayer(TextBlock text) {
+      this.text = text;
+      paint = new Paint();
+      paint.setAntiAlias(true);
+      paint.setColor(text.getColor());
+      paint.setTextSize(text.getTextSize());
+      paint.setTextAlign(text.getAlign() == TextBlock.ALIGN_CENTER ? Align.CENTER : Align.LEFT);
+      layer = new CachedLayer(this);
+    }
+
+    /**
+     * Sizes the layer to fit the lines of the block as they are now.
+     */
+    void layout() {
+      int width = 0;
+      for (int i = 0; i < text.getLineCount(); i++) {
+        width = Math.max(width,
+            (int) Math.ceil(paint.measureText(text.getLine(i), 0, text.getLineLength(i))));
+      }
+      ascent = (int) Math.ceil(-paint.ascent());
+      int height = ascent + (int) Math.ceil(paint.descent())
+          + Math.max(0, text.getLineCount() - 1) * text.getLineHeight();
+      layer.setSize(text.getLineCount() > 0 ? width + 2 * TEXT_PADDING : 0, height);
+      version = text.getVersion();
+    }
+
+    @Override
+    public void paint(Canvas canvas, int width, int height) {
+      int x = text.getAlign() == TextBlock.ALIGN_CENTER ? width / 2 : TEXT_PADDING;
+      for (int i = 0; i < text.getLineCount(); i++) {
+        canvas.drawText(text.getLine(i), 0, text.getLineLength(i), x,
+            ascent + i * text.getLineHeight(), paint);
+      }
+    }
+  }
+
+  private final SpriteBatch spriteBatch;
+
+  /** Canvas of the frame being drawn. */
+  private Canvas canvas;
+
+  /** Layer of each text block drawn, by identity as blocks change in place. */
+  private final Map<TextBlock, TextLayer> textLayers = Maps.newIdentityHashMap();
+
+  public CanvasRenderer(SpriteAtlas atlas) {
+    spriteBatch = new SpriteBatch(atlas);
+  }
+
+  /**
+   * Starts a frame drawn onto {@code canvas}.
+   */
+  public void begin(Canvas canvas) {
+    this.canvas = canvas;
+    spriteBatch.begin(canvas);
+  }
+
+  @Override
+  public void clear(int color) {
+    // When only a dirty region was locked, the canvas is clipped to it.
+    canvas.drawColor(color);
+  }
+
+  @Override
+  public void drawSprite(int sprite, int x, int y) {
+    spriteBatch.draw(sprite, x, y);
+  }
+
+  @Override
+  public void drawText(TextBlock text, int x, int y) {
+    TextLayer textLayer = textLayers.get(text);
+    if (textLayer == null) {
+      textLayer = new TextLayer(text);
+      textLayers.put(text, textLayer);
+    }
+    if (textLayer.version != text.getVersion()) {
+      textLayer.layout();
+    }
+    CachedLayer layer = textLayer.layer;
+    int left = text.getAlign() == TextBlock.ALIGN_CENTER
+        ? x - layer.getWidth() / 2 : x - TEXT_PADDING;
+    layer.draw(canvas, left, y - textLayer.ascent);
+  }
+
+  @Override
+  public void present() {
+    spriteBatch.end();
+    canvas = null;
+  }
+
+  /**
+   * Sets if sprites are drawn anti-aliased and filtered.
+   */
+  public void setAntiAlias(boolean antiAlias) {
+    Paint paint = spriteBatch.getPaint();
+    paint.setAntiAlias(antiAlias);
+    paint.setFilterBitmap(antiAlias);
+  }
+
+  /**
+   * Frees the rasterized text, e.g. because the surface changed size. It is
+   * rasterized again when next drawn.
+   */
+  public void recycleText() {
+    for (TextLayer textLayer : textLayers.values()) {
+      textLayer.layer.recycle();
+    }
+  }
+}
@@ -3,63 +3,117 @@
  */
 package com.czhang.winniehunt;
 
-import android.graphics.Bitmap;
-import android.graphics.Rect;
-
 /**
  * A Carey will bounce around the screen, with a random initial velocity.
+ * Careys are stored in an {@link EntityStore}; this is a view of one of them.
  *
  * @author czhang
  */
 public class Carey extends OverlapableShape {
   public static final int SIZE_DP = 50;
-  private static final int MAX_VELOCITY = 5;
+  /** Careys move less than this many dp per tick on each axis. */
+  public static final int MAX_VELOCITY = 5;
   private static final int MIN_VELOCITY = 1;
 
-  /** Canvas dimensions. **/
-  private final int canvasWidth, canvasHeight;
+  /** Careys are drawn as faces, so collide as a circle. **/
+  private static final Hitbox HITBOX = Hitbox.circle(2);
+
+  private final EntityStore store;
+  private int index;
 
-  /** Velocity of movement, in dp per draw cycle. **/
-  private int dx, dy;
+  public Carey(EntityStore store, int index) {
+    this.store = store;
+    this.index = index;
+  }
 
   /**
-   * Creates a Carey at the specified x,y (top left coordinate). Has a random velocity.
+   * Adds a Carey at the specified x,y (top left coordinate) to the store,
+   * with a random velocity. Returns its index.
    */
-  public Carey(int x, int y, int canvasWidth, int canvasHeight, Bitmap bitmap) {
-    super(new Rect(x, y, x + SIZE_DP, y + SIZE_DP), bitmap);
-    this.canvasWidth = canvasWidth;
-    this.canvasHeight = canvasHeight;
+  public static int add(EntityStore store, int x, int y, int sprite, GameRandom rand) {
+    int dx = randomVelocity(rand);
+    int dy = randomVelocity(rand);
+    return store.add(x, y, dx, dy, sprite);
+  }
 
-    dx = randomVelocity();
-    dy = randomVelocity();
+  /**
+   * Points this view at another Carey in the same store.
+   */
+  public Carey setIndex(int index) {
+    this.index = index;
+    return this;
+  }
+
+  @Override
+  public int getLeft() {
+    return store.getLeft(index);
+  }
+
+  @Override
+  public int getTop() {
+    return store.getTop(index);
+  }
+
+  @Override
+  public int getSize() {
+    return SIZE_DP;
+  }
+
+  @Override
+  public int getSprite() {
+    return store.getSprite(index);
+  }
+
+  @Override
+  public Hitbox getHitbox() {
+    return HITBOX;
   }
 
   /**
-   * Steps the motion of the Carey, reversing direction if out of bounds.
+   * Steps the motion of the Carey at index i, reversing direction if out of bounds.
    */
-  public void step() {
+  public static void step(EntityStore store, int i, int canvasWidth, int canvasHeight) {
+    int left = store.getLeft(i);
+    int top = store.getTop(i);
+    int dx = store.getDx(i);
+    int dy = store.getDy(i);
+
     // Reverse x velocity if out of bounds.
-    if (getLeft() < 0) {
+    if (left < 0) {
       dx = Math.abs(dx);
-    } else if (getRight() > canvasWidth) {
+    } else if (left + SIZE_DP > canvasWidth) {
       dx = -Math.abs(dx);
     }
 
     // Reverse y velocity if out of bounds.
-    if (getTop() < 0) {
+    if (top < 0) {
       dy = Math.abs(dy);
-    } else if (getBottom() > canvasHeight) {
+    } else if (top + SIZE_DP > canvasHeight) {
       dy = -Math.abs(dy);
     }
 
-    geometry.offset(dx, dy);
+    store.setVelocity(i, dx, dy);
+    store.offset(i);
+  }
+
+  /**
+   * Returns how far along its last step the Carey at index i first
+   * overlapped {@code that}, which is assumed not to have moved, or -1 if
+   * it did not. See {@link Hitbox#sweep}.
+   */
+  public static double sweep(EntityStore store, int i, OverlapableShape that) {
+    int left = store.getPrevLeft(i);
+    int top = store.getPrevTop(i);
+    return Hitbox.sweep(HITBOX, left, top, left + SIZE_DP, top + SIZE_DP,
+        store.getLeft(i) - left, store.getTop(i) - top,
+        that.getHitbox(), that.getLeft(), that.getTop(), that.getRight(), that.getBottom());
   }
 
-  private int randomVelocity() {
+  private static int randomVelocity(GameRandom rand) {
     // Uniform distribution of speed.
-    int dv = (int) (Math.random() * (MAX_VELOCITY - MIN_VELOCITY)) + MIN_VELOCITY;
+    int dv = rand.nextInt(MAX_VELOCITY - MIN_VELOCITY) + MIN_VELOCITY;
 
     // 50% chance of opposite direction;
-    return (Math.random() < 0.5) ? dv : -dv;
+    return rand.nextBoolean() ? dv : -dv;
   }
 }
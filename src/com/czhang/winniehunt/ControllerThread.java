@@ -3,112 +3,136 @@
  */
 package com.czhang.winniehunt;
 
-import java.util.List;
-import java.util.Random;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Paint.Align;
-import android.graphics.Rect;
 import android.os.Vibrator;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 
-import com.google.common.collect.Lists;
-
 /**
- * Thread handling rendering and gameplay.
+ * Thread handling gameplay. Steps the simulation at a fixed rate and
+ * publishes a {@link WorldSnapshot} after every step for the
+ * {@link RenderThread} it owns to draw.
  *
  * @author czhang
  */
-public class ControllerThread extends Thread {
-  private static final int NUM_TREATS = 10;
-
-  private static final int TEXT_SIZE = 50;
-  private static final int TEXT_COLOR = Color.WHITE;
-
-  private static final int BACKGROUND_COLOR = Color.BLACK;
-
+public class ControllerThread extends Thread implements GameWorld.Listener, TouchQueue.Sink,
+    FeedbackDispatcher.Handler {
   /** Vibration patterns. */
   private static final long[] EAT_PATTERN = new long[] {0, 30};
   private static final long[] CAUGHT_PATTERN = new long[] {0, 100, 200, 300, 400, 500};
 
-  /** Safe zone within which no Carey's can be generated. */
-  private static final int SAFE_ZONE_RADIUS = 100;
+  /** Types of feedback events posted to {@link #feedback}. */
+  private static final int FEEDBACK_TREAT_EATEN = 0;
+  private static final int FEEDBACK_CAUGHT = 1;
+  private static final int FEEDBACK_WAVE_CLEARED = 2;
+
+  /**
+   * Minimum time between feedback of each type, in nanoseconds. Treats
+   * eaten in quick succession give one pulse rather than a buzz.
+   */
+  private static final long[] FEEDBACK_INTERVALS = new long[] {80000000L, 0, 0};
+
+  /** Number of feedback events that can be waiting for the dispatcher. */
+  private static final int FEEDBACK_QUEUE_CAPACITY = 64;
+
+  /** Number of touch samples that can be waiting for the game thread. */
+  private static final int TOUCH_QUEUE_CAPACITY = 256;
+
+  /** File in the app's files directory the last session is recorded to. */
+  private static final String REPLAY_FILE = "last.replay";
 
-  /** Random number generator used for picking images. */
-  private static final Random RAND = new Random();
+  /** Bytes of replay kept in memory before they are written to the file. */
+  private static final int REPLAY_WRITE_BYTES = 8192;
 
-  /** Maximum delay between taps to count as double tap. */
-  private static final int DOUBLE_TAP_DELAY_MS = 250;
+  private static final long NANOS_PER_MILLI = 1000000L;
 
   /**
-   * Enum for the state of the thread.
+   * Lock guarding the simulation. Named for the surface as it used to guard
+   * drawing too; drawing now only touches snapshots.
    */
-  public enum State {
-    PAUSE,
-    READY,    // Display "tap to start" overlay.
-    RUNNING,
-    END       // Display "Carey caught Winnie FOREVERRRR" overlay.
-  }
-
-  /** Handle to the surface manager object we interact with */
   private final SurfaceHolder surfaceHolder;
 
-  /** Handle to the application context, used to e.g. fetch Drawables. */
-  private final Context context;
+  /** Snapshots of the world passed to {@link #renderer}. */
+  private final SnapshotExchange snapshots = new SnapshotExchange();
 
-  /** State of the game. */
-  private State state;
+  /** Draws the snapshots. */
+  private final RenderThread renderer;
 
-  /** If the game is over. */
-  private boolean running;
+  /** Durations of the phases of both threads' loops. */
+  private final FrameStats stats = new FrameStats();
 
-  /** Canvas dimensions. */
-  private int canvasWidth, canvasHeight;
+  /** Lowers the drawing quality when frames or ticks run over their budget. */
+  private final QualityGovernor quality = new QualityGovernor();
 
-  /** List of all the treats. */
-  private List<Treat> treats;
+  /** The gameplay simulation. */
+  private final GameWorld world;
 
-  /** List of all the Careys. */
-  private List<Carey> careys;
+  /** Touch samples from the UI thread, applied by this thread before each step. */
+  private final TouchQueue touches = new TouchQueue(TOUCH_QUEUE_CAPACITY);
 
-  /** The Winnie. */
-  private Winnie winnie;
+  /**
+   * State of the world as of the last step, read by the UI thread to decide
+   * which touches to accept without waiting for this thread.
+   */
+  private volatile GameWorld.State touchState = GameWorld.State.READY;
 
-  /** Paint used for drawing text overlays. */
-  private final Paint textPaint;
+  /** Paces simulation ticks. The thread wakes up once per tick. */
+  private final FrameClock clock = new FrameClock();
 
-  /** Paint used for drawing background. */
-  private final Paint backgroundPaint;
+  /** If the thread should keep running. Guarded by {@link #parkLock}. */
+  private boolean running;
 
-  /** Image bitmaps used for Winnie. */
-  private final List<Bitmap> winnieImages;
+  /** Lock the thread parks on while the game is paused. */
+  private final Object parkLock = new Object();
 
-  /** Image bitmaps used for Careys. */
-  private final List<Bitmap> careyImages;
+  /** If the game is paused. */
+  private volatile boolean paused;
 
-  /** Image bitmaps used for Treats. */
-  private final List<Bitmap> treatImages;
+  /** Run on this thread when a tap resumes the paused game, or null. */
+  private volatile Runnable resumeListener;
 
-  /**
-   * Image index used so Carey images chosen in sequential order.
-   * Between 0 and {@code careyImages.size - 1}.   *
-   */
-  private int careyImageIndex;
+  /** If the paused world has been published, so the thread can park until woken. */
+  private boolean pausedSnapshotPublished;
 
   /** Vibrator used for certain parts of the game. */
   private final Vibrator vibrator;
 
+  /** Plays the sound effects of game events. */
+  private final SoundEffectPlayer soundEffects = new SoundEffectPlayer();
+
   /**
-   * Time of the last tap event or 0 if never set.
-   * Only set when handling motion events in the END {@link State}.
+   * Vibrates and plays sounds for game events off this thread, as the
+   * vibrator is a call into another process.
    */
-  private long lastTapTime;
+  private final FeedbackDispatcher feedback =
+      new FeedbackDispatcher(this, FEEDBACK_INTERVALS, FEEDBACK_QUEUE_CAPACITY);
+
+  /**
+   * Records the session so it can be replayed headlessly, or null if not
+   * recording. Only debug builds record. Guarded by the surfaceHolder lock.
+   */
+  private ReplayRecorder recorder;
+
+  /**
+   * Replay recorded but not written to the file yet. Writing to it does no
+   * I/O, so it can be done with the lock held. Guarded by the surfaceHolder lock.
+   */
+  private final ByteArrayOutputStream replayBytes = new ByteArrayOutputStream();
+
+  /** Replay taken from {@link #replayBytes} being written by this thread. */
+  private final ByteArrayOutputStream replayChunk = new ByteArrayOutputStream();
+
+  /** File the replay is written to, opened by this thread on the first write. */
+  private OutputStream replayOut;
+
+  private final Context context;
 
   /**
    * Creates a new instance of the thread. Does not start the game yet.
@@ -116,311 +140,480 @@ public class ControllerThread extends Thread {
   public ControllerThread(SurfaceHolder surfaceHolder, Context context) {
     this.surfaceHolder = surfaceHolder;
     this.context = context;
+    renderer = new RenderThread(surfaceHolder, context, snapshots, stats, quality);
+
+    // Set up the simulation. Debug builds record it from the start, into
+    // memory; the file is only opened by this thread once it runs.
+    long seed = System.nanoTime();
+    world = new GameWorld(seed, SpriteLoader.WINNIE_DRAWABLES.length,
+        SpriteLoader.CAREY_DRAWABLES.length, SpriteLoader.TREAT_DRAWABLES.length);
+    world.setListener(this);
+    if (BuildConfig.DEBUG) {
+      recorder = new ReplayRecorder(replayBytes, world);
+    }
 
-    // Set up text Paint.
-    textPaint = new Paint();
-    textPaint.setAntiAlias(true);
-    textPaint.setColor(TEXT_COLOR);
-    textPaint.setTextSize(TEXT_SIZE);
-    textPaint.setTextAlign(Align.CENTER);
-
-    // Set up background Paint.
-    backgroundPaint = new Paint();
-    backgroundPaint.setColor(BACKGROUND_COLOR);
-
-    // Set up images.
-    winnieImages = Lists.newArrayListWithCapacity(5);
-    careyImages = Lists.newArrayListWithCapacity(5);
-    treatImages = Lists.newArrayListWithCapacity(5);
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie2));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie3));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie4));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie5));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie6));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie7));
-    winnieImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.winnie8));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey2));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey3));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey4));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey5));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey6));
-    careyImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.carey7));
-    treatImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.treat));
-    treatImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.treat2));
-    treatImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.treat3));
-    treatImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.treat4));
-    treatImages.add(BitmapFactory.decodeResource(context.getResources(), R.drawable.treat5));
-    careyImageIndex = RAND.nextInt(careyImages.size());
+    // Large populations are stepped on every core. Small ones stay serial.
+    world.setParallelism(Runtime.getRuntime().availableProcessors(),
+        GameWorld.DEFAULT_PARALLEL_THRESHOLD);
 
     // Set up vibrator.
     vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
   }
 
   /**
-   * Handles a motion event.
+   * Handles a motion event. Called on the UI thread; queues the event for
+   * the game thread rather than waiting for the frame being drawn.
    */
   public boolean handleMotionEvent(MotionEvent event) {
-    synchronized (surfaceHolder) {
-      switch (state) {
-        case PAUSE:
-          return false;
-        case READY:
-          if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            state = State.RUNNING;
-            return true;
-          }
-          return false;
-        case RUNNING:
-          winnie.moveTo((int) event.getX(), (int) event.getY());
-          return true;
-        case END:
-          if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            long time = event.getEventTime();
-            if (time - lastTapTime < DOUBLE_TAP_DELAY_MS) {
-              reset();
-            }
-            lastTapTime = time;
-            return true;
-          }
-          return false;
-      }
+    int action = event.getAction();
+    boolean down = action == MotionEvent.ACTION_DOWN;
+    // Only taps matter outside the RUNNING state.
+    if (!down && touchState != GameWorld.State.RUNNING) {
       return false;
     }
+
+    if (down) {
+      touches.offer(TouchQueue.ACTION_DOWN, (int) event.getX(), (int) event.getY(),
+          event.getEventTime());
+    } else if (action == MotionEvent.ACTION_MOVE) {
+      // Queue the samples batched into this event too, so Winnie follows
+      // the whole path of the finger.
+      for (int i = 0; i < event.getHistorySize(); i++) {
+        touches.offer(TouchQueue.ACTION_MOVE, (int) event.getHistoricalX(i),
+            (int) event.getHistoricalY(i), event.getHistoricalEventTime(i));
+      }
+      touches.offer(TouchQueue.ACTION_MOVE, (int) event.getX(), (int) event.getY(),
+          event.getEventTime());
+    } else {
+      touches.offer(TouchQueue.ACTION_UP, (int) event.getX(), (int) event.getY(),
+          event.getEventTime());
+    }
+
+    // A parked thread has to wake up to see the touch.
+    if (paused) {
+      wake();
+    }
+    return true;
+  }
+
+  /**
+   * Applies a touch sample taken from {@link #touches}. Called on this thread
+   * with the surfaceHolder lock held.
+   */
+  @Override
+  public void onTouch(int action, int x, int y, long timeMs) {
+    if (recorder != null) {
+      recorder.touch(action, x, y, timeMs);
+    }
+    world.touch(action, x, y, timeMs);
+    if (paused && world.getState() != GameWorld.State.PAUSE) {
+      // Tapped to resume. Don't catch up on the time spent paused.
+      paused = false;
+      clock.reset();
+      Runnable listener = resumeListener;
+      if (listener != null) {
+        listener.run();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    renderer.start();
+    soundEffects.start();
+    feedback.start();
+    super.start();
   }
 
   @Override
   public void run() {
-    while (running) {
-      Canvas canvas = null;
-      try {
-        canvas = surfaceHolder.lockCanvas(null);
-        synchronized (surfaceHolder) {
-          step();
-          doDraw(canvas);
+    while (awaitTick()) {
+      synchronized (surfaceHolder) {
+        // Step the simulation at a fixed rate, applying the touches that
+        // arrived before each step.
+        long now = System.nanoTime();
+        int ticks = clock.advance(now);
+        if (ticks == 0 && paused) {
+          // The clock keeps ticking while paused, and the world ignores the
+          // ticks, but after parking none may be due yet. A tap woke the
+          // thread and has to resume the game without waiting for one.
+          touches.drain(this);
         }
-      } finally {
-        // Do this in a finally so that if an exception is thrown
-        // during the above, we don't leave the Surface in an
-        // inconsistent state.
-        if (canvas != null) {
-          surfaceHolder.unlockCanvasAndPost(canvas);
+        for (int i = 0; i < ticks; i++) {
+          touches.drain(this);
+          long start = System.nanoTime();
+          world.step();
+          long tickNanos = System.nanoTime() - start;
+          stats.record(FrameStats.Phase.TICK, tickNanos);
+          quality.record(QualityGovernor.Source.TICK, tickNanos, clock.getTickNanos());
+          if (recorder != null) {
+            recorder.tick(world);
+          }
         }
+        touchState = world.getState();
+
+        // The last tick happened the leftover fraction of a tick ago.
+        long start = System.nanoTime();
+        long tickTime = now - (long) (clock.getAlpha() * clock.getTickNanos());
+        snapshots.getBack().copyFrom(world, tickTime, clock.getTickNanos());
+        snapshots.publish();
+        stats.record(FrameStats.Phase.PUBLISH, System.nanoTime() - start);
       }
-    }
-  }
+      finishTick();
+      renderer.onSnapshotPublished();
+      writeReplay(false);
 
-  /**
-   * Prepares and starts the game and thread.
-   */
-  public void doStart() {
-    synchronized (surfaceHolder) {
-      // Set up initial states
-      state = State.READY;
-      careys = Lists.newArrayList();
+      // Give up the CPU until the next tick is due.
+      waitForNextTick();
     }
+    writeReplay(true);
   }
 
   /**
-   * Resets the game. Winnie in the center, one Carey.
+   * Writes the replay recorded so far to the file, once enough has built
+   * up or if {@code finish}, in which case recording stops. Only holds the
+   * lock to take the bytes, so the simulation never waits for the file.
    */
-  private void reset() {
+  private void writeReplay(boolean finish) {
     synchronized (surfaceHolder) {
-      // Reset back to one Carey.
-      careys = Lists.newArrayList();
-      addCarey();
-
-      // Move Winnie to center.
-      int x = (canvasWidth - Winnie.SIZE_DP) / 2;
-      int y = (canvasHeight - Winnie.SIZE_DP) / 2;
-      winnie = new Winnie(x, y, winnieImages.get(RAND.nextInt(treatImages.size())));
+      if (recorder == null || (!finish && replayBytes.size() < REPLAY_WRITE_BYTES)) {
+        return;
+      }
+      if (finish) {
+        recorder.close();
+        recorder = null;
+      }
+      try {
+        replayBytes.writeTo(replayChunk);
+      } catch (IOException e) {
+        // Not thrown by a ByteArrayOutputStream.
+      }
+      replayBytes.reset();
+    }
 
-      // Reset treats.
-      setupTreats();
+    try {
+      if (replayOut == null) {
+        replayOut = new FileOutputStream(new File(context.getFilesDir(), REPLAY_FILE));
+      }
+      replayChunk.writeTo(replayOut);
+      if (finish) {
+        closeReplay();
+      }
+    } catch (IOException e) {
+      // Play without recording.
+      closeReplay();
+      synchronized (surfaceHolder) {
+        recorder = null;
+      }
+    }
+    replayChunk.reset();
+  }
 
-      // Reset state.
-      state = State.READY;
+  private void closeReplay() {
+    if (replayOut != null) {
+      try {
+        replayOut.close();
+      } catch (IOException e) {
+      }
+      replayOut = null;
     }
   }
 
   /**
-   * Updates the location of objects based on the physics of things.
+   * Blocks while there is nothing to simulate: the game is paused and the
+   * paused world has already been published. Returns false when the thread
+   * should exit.
    */
-  private void step() {
-    // Step all the Carey's
-    for (Carey carey : careys) {
-      carey.step();
+  private boolean awaitTick() {
+    boolean parked = false;
+    synchronized (parkLock) {
+      while (running && paused && pausedSnapshotPublished) {
+        parked = true;
+        try {
+          parkLock.wait();
+        } catch (InterruptedException e) {
+          // Check the conditions again.
+        }
+      }
+      if (!running) {
+        return false;
+      }
     }
 
-    // Stop here if game not in RUNNING state.
-    if (state != State.RUNNING) {
-      return;
+    if (parked) {
+      // Don't try to catch up on the time spent parked.
+      synchronized (surfaceHolder) {
+        clock.reset();
+      }
     }
+    return true;
+  }
 
-    // Check overlap treats.
-    checkOverlapTreats();
-
-    // If all treats eaten, add another Carey and reset treats.
-    // Otherwise, we check if Winnie overlaps and Careys.
-    if (treatsRemaining() == 0) {
-      setupTreats();
-      addCarey();
-    } else {
-      checkOverlapCareys();
+  /**
+   * Lets the thread park if it just published the paused world.
+   */
+  private void finishTick() {
+    synchronized (parkLock) {
+      if (paused) {
+        pausedSnapshotPublished = true;
+      }
     }
   }
 
   /**
-   * Checks and handles if Winnie overlaps a treat.
+   * Sleeps until the next tick is due, or yields if it is due in less than
+   * a millisecond.
    */
-  private void checkOverlapTreats() {
-    // Eat any overlapping treats.
-    for (int i = 0; i < treats.size(); i++) {
-      if (winnie.overlaps(treats.get(i))) {
-        treats.get(i).setEaten(true);
-        treats.remove(i);
-        i--;
-        vibrator.vibrate(EAT_PATTERN, -1);
+  private void waitForNextTick() {
+    long wait;
+    synchronized (surfaceHolder) {
+      wait = clock.nanosUntilNextFrame(System.nanoTime());
+    }
+    if (wait >= NANOS_PER_MILLI) {
+      try {
+        Thread.sleep(wait / NANOS_PER_MILLI, (int) (wait % NANOS_PER_MILLI));
+      } catch (InterruptedException e) {
+        // Fall through and step early.
       }
+    } else if (wait > 0) {
+      Thread.yield();
     }
   }
 
   /**
-   * Checks and handles if Winnie overlaps a Carey.
+   * Pauses the game, freezing everything on screen. Both threads park once
+   * the paused world has been drawn. Tapping the screen resumes.
    */
-  private void checkOverlapCareys() {
-    boolean overlaps = false;
-    for (Carey carey : careys) {
-      if (winnie.overlaps(carey)) {
-        overlaps = true;
-        break;
+  public void pause() {
+    synchronized (surfaceHolder) {
+      if (paused) {
+        return;
+      }
+      world.pause();
+      if (recorder != null) {
+        recorder.pause();
       }
+      touchState = GameWorld.State.PAUSE;
+      paused = true;
     }
+    wake();
+  }
 
-    // If there was an overlap. End the game and move to the next state.
-    if (overlaps) {
-      state = State.END;
-      vibrator.vibrate(CAUGHT_PATTERN, -1);
+  /**
+   * Wakes both threads if they are parked, so the world is published and
+   * drawn at least once more, e.g. because the window got focus back.
+   */
+  public void wake() {
+    synchronized (parkLock) {
+      pausedSnapshotPublished = false;
+      parkLock.notifyAll();
     }
+    renderer.wake();
+  }
+
+  /**
+   * Sets if the surface can be drawn to. When set to false, blocks until the
+   * render thread has finished with the surface, as the surface must not be
+   * touched after SurfaceHolder.Callback.surfaceDestroyed() returns.
+   */
+  public void setSurfaceReady(boolean surfaceReady) {
+    renderer.setSurfaceReady(surfaceReady);
   }
 
   /**
-   * Draws the game using the specified canvas.
-   * @param canvas
+   * Stops both threads and waits for them to exit.
    */
-  private void doDraw(Canvas canvas) {
-    if (canvas == null) {
-      return;
+  public void quit() {
+    setRunning(false);
+    join(this);
+    join(renderer);
+    feedback.quit();
+    soundEffects.quit();
+    // The thread wrote out the replay as it exited.
+    synchronized (surfaceHolder) {
+      world.setParallelism(1, GameWorld.DEFAULT_PARALLEL_THRESHOLD);
     }
+  }
 
-    // Draw background, clears previously drawn items.
-    canvas.drawColor(BACKGROUND_COLOR);
+  private static void join(Thread thread) {
+    boolean retry = true;
+    while (retry && thread.isAlive()) {
+      try {
+        thread.join();
+        retry = false;
+      } catch (InterruptedException e) {
+      }
+    }
+  }
 
-    // Always draw these, regardless of the state.
-    for (Treat treat : treats) {
-      if (!treat.isEaten()) {
-        treat.draw(canvas);
+  /**
+   * Returns the saved state of the world, see {@link WorldCodec}, or null
+   * if the game has not been laid out yet.
+   */
+  public byte[] saveWorld() {
+    synchronized (surfaceHolder) {
+      return world.getWinnie() == null ? null : WorldCodec.encode(world);
+    }
+  }
+
+  /**
+   * Puts the world back in a state returned by {@link #saveWorld()}, e.g.
+   * after the process was killed. Call before the thread starts. Leaves
+   * the world as it was if the state could not be read.
+   */
+  public void restoreWorld(byte[] data) throws IOException {
+    synchronized (surfaceHolder) {
+      WorldCodec.decode(data, world);
+      // Before Honeycomb the state can be saved before onPause(), while
+      // running. Don't drop the player back into a running game.
+      if (world.getState() == GameWorld.State.RUNNING) {
+        world.pause();
       }
+      // The recording started from a new world, so it could not be replayed.
+      recorder = null;
+      replayBytes.reset();
+      touchState = world.getState();
+      paused = touchState == GameWorld.State.PAUSE;
     }
-    for (Carey carey : careys) {
-      carey.draw(canvas);
+  }
+
+  /**
+   * Prepares and starts the game and thread.
+   */
+  public void doStart() {
+    synchronized (surfaceHolder) {
+      // Set up initial states
+      world.setState(GameWorld.State.READY);
+      if (recorder != null) {
+        recorder.start();
+      }
     }
-    winnie.draw(canvas);
-
-    // For certain states, we want to draw a text overlay.
-    int x = canvasWidth/2;
-    int y = canvasHeight/2;
-    switch (state) {
-      case READY:
-        canvas.drawText(context.getResources().getString(R.string.message_ready), x, y, textPaint);
+  }
+
+  @Override
+  public void onTreatEaten(Treat treat) {
+    feedback.post(FEEDBACK_TREAT_EATEN, 0);
+  }
+
+  @Override
+  public void onCaught(Carey carey) {
+    feedback.post(FEEDBACK_CAUGHT, 0);
+  }
+
+  @Override
+  public void onWaveCleared(int wave) {
+    // The render thread sees the new treats in the next snapshot.
+    feedback.post(FEEDBACK_WAVE_CLEARED, wave);
+  }
+
+  /**
+   * Performs the feedback of game events. Called on the dispatcher thread.
+   */
+  @Override
+  public void onFeedback(int type, int count, int value) {
+    switch (type) {
+      case FEEDBACK_TREAT_EATEN:
+        vibrator.vibrate(EAT_PATTERN, -1);
+        soundEffects.play(SoundEffects.EAT);
+        break;
+      case FEEDBACK_CAUGHT:
+        vibrator.vibrate(CAUGHT_PATTERN, -1);
+        soundEffects.play(SoundEffects.CAUGHT);
         break;
-      case END:
-        canvas.drawText(context.getResources().getString(R.string.message_done1),
-            x, y - TEXT_SIZE / 2, textPaint);
-        canvas.drawText(context.getResources().getString(R.string.message_done2),
-            x, y + TEXT_SIZE / 2, textPaint);
+      case FEEDBACK_WAVE_CLEARED:
+        soundEffects.play(SoundEffects.WAVE_CLEARED);
         break;
     }
   }
 
   /**
-   * Sets up the visible parts of the game. Requires that {@link #canvasWidth} and
-   * {@link #canvasHeight} be set already to function properly.
+   * Sets up the visible parts of the game. Requires that the surface size
+   * be set already to function properly. Does nothing if
+   * the game is already laid out, e.g. when the surface is recreated on resume.
    */
   public void setupLayout() {
     synchronized (surfaceHolder) {
-      setupTreats();
-      setupWinnie();
-      addCarey();
+      if (world.getWinnie() == null) {
+        world.setupLayout();
+        if (recorder != null) {
+          recorder.layout();
+        }
+      }
     }
   }
 
+  public void setRunning(boolean running) {
+    synchronized (parkLock) {
+      this.running = running;
+      parkLock.notifyAll();
+    }
+    renderer.setRunning(running);
+  }
+
   /**
-   * Creates and populates {@link #treats} with {@link #NUM_TREATS} treats.
+   * Writes the frame stats followed by the number of touches dropped
+   * because this thread fell behind, of sounds dropped because too many
+   * played at once, and of feedback events dropped because the dispatcher
+   * fell behind, e.g. to attach to a bug report.
    */
-  private void setupTreats() {
-    treats = Lists.newArrayList();
-
-    for (int i = 0; i < NUM_TREATS; i++) {
-      int x = (int) (Math.random() * (canvasWidth - Treat.SIZE_DP));
-      int y = (int) (Math.random() * (canvasHeight - Treat.SIZE_DP));
-      treats.add(new Treat(x, y, treatImages.get(RAND.nextInt(treatImages.size()))));
-    }
+  public void dumpStats(PrintWriter out) {
+    stats.dump(out);
+    out.println();
+    out.printf("dropped touches: %d%n", touches.getDropped());
+    out.printf("dropped sounds: %d%n", soundEffects.getDropped());
+    out.printf("dropped feedback events: %d%n", feedback.getDropped());
+    out.flush();
   }
 
   /**
-   * Returns the number of treats yet to be eaten.
+   * Returns the quality frames are currently drawn at.
    */
-  private int treatsRemaining() {
-    return treats.size();
+  public QualityGovernor.Level getQualityLevel() {
+    return quality.getLevel();
   }
 
   /**
-   * Creates a Winnie at the center of the screen.
+   * Sets if the frame rate, frame times and entity counts are drawn over
+   * the game.
    */
-  private void setupWinnie() {
-    // Get center coordinates.
-    int x = (canvasWidth - Winnie.SIZE_DP) / 2;
-    int y = (canvasHeight - Winnie.SIZE_DP) / 2;
-    winnie = new Winnie(x, y, winnieImages.get(RAND.nextInt(treatImages.size())));
+  public void setHudVisible(boolean hudVisible) {
+    renderer.setHudVisible(hudVisible);
+  }
+
+  public boolean isPaused() {
+    return paused;
   }
 
   /**
-   * Adds another Carey at a random location with a random
+   * Sets what to run when a tap resumes the paused game. It is run on this
+   * thread with the surfaceHolder lock held, so must not block.
    */
-  private void addCarey() {
-    // Ensure that no Careys are made within the safe zone.
-    int x = (int) (Math.random() * (canvasWidth - Carey.SIZE_DP));
-    int y = (int) (Math.random() * (canvasHeight - Carey.SIZE_DP));
-    Rect safeZone = new Rect(x - SAFE_ZONE_RADIUS, y - SAFE_ZONE_RADIUS,
-        x + SAFE_ZONE_RADIUS, y + SAFE_ZONE_RADIUS);
-    while (safeZone.contains(x, y)) {
-      x = (int) (Math.random() * (canvasWidth - Carey.SIZE_DP));
-      y = (int) (Math.random() * (canvasHeight - Carey.SIZE_DP));
-    }
+  public void setResumeListener(Runnable resumeListener) {
+    this.resumeListener = resumeListener;
+  }
 
-    careys.add(new Carey(x, y, canvasWidth, canvasHeight,
-        careyImages.get(nextCareyImageIndex())));
+  public boolean isHudVisible() {
+    return renderer.isHudVisible();
   }
 
   /**
-   * Returns the next index for Carey picture.
+   * Sets if only the part of the screen that changed is redrawn each frame.
+   * Falls back to redrawing everything when most of the screen changed.
    */
-  private int nextCareyImageIndex() {
-    careyImageIndex++;
-    careyImageIndex = (careyImageIndex >= careyImages.size()) ? 0 : careyImageIndex;
-    return careyImageIndex;
+  public void setDirtyRendering(boolean dirtyRendering) {
+    renderer.setDirtyRendering(dirtyRendering);
   }
 
-  public void setRunning(boolean running) {
-    this.running = running;
+  public boolean isDirtyRendering() {
+    return renderer.isDirtyRendering();
   }
 
   public void setSurfaceSize(int width, int height) {
     synchronized (surfaceHolder) {
-      canvasWidth = width;
-      canvasHeight = height;
+      world.setSize(width, height);
+      if (recorder != null) {
+        recorder.size(width, height);
+      }
     }
   }
 }
@@ -35,25 +35,31 @@ public class ControllerView extends SurfaceView implements SurfaceHolder.Callbac
       int height) {
     thread.setSurfaceSize(width, height);
     thread.setupLayout();
+    thread.wake();
   }
 
   @Override
   public void surfaceCreated(SurfaceHolder holder) {
-    thread.setRunning(true);
-    thread.start();
+    // The thread outlives the surface, which is destroyed and recreated
+    // whenever the activity is paused and resumed.
+    thread.setSurfaceReady(true);
+    if (thread.getState() == Thread.State.NEW) {
+      thread.setRunning(true);
+      thread.start();
+    }
   }
 
   @Override
   public void surfaceDestroyed(SurfaceHolder holder) {
-    boolean retry = true;
-    thread.setRunning(false);
-    while (retry) {
-      try {
-        thread.join();
-        retry = false;
-      } catch (InterruptedException e) {
-      }
-    }
+    // Blocks until the thread has stopped drawing; it then parks until the
+    // surface is created again.
+    thread.setSurfaceReady(false);
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    thread.quit();
+    super.onDetachedFromWindow();
   }
 
   /**
@@ -63,7 +69,10 @@ public class ControllerView extends SurfaceView implements SurfaceHolder.Callbac
   @Override
   public void onWindowFocusChanged(boolean hasWindowFocus) {
     if (!hasWindowFocus) {
-
+      thread.pause();
+    } else {
+      // Redraw in case the window was covered. Stays paused until tapped.
+      thread.wake();
     }
   }
 
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Bounding rectangle of the areas of the screen that changed, grown one
+ * rectangle at a time. Starts out empty.
+ *
+ * @author czhang
+ */
+public final class DirtyRegion {
+  private int left, top, right, bottom;
+  private boolean empty = true;
+
+  public void clear() {
+    empty = true;
+  }
+
+  /**
+   * Grows the region to include the rectangle. Empty rectangles are ignored.
+   */
+  public void union(int left, int top, int right, int bottom) {
+    if (left >= right || top >= bottom) {
+      return;
+    }
+    if (empty) {
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+      empty = false;
+    } else {
+      if (left < this.left) this.left = left;
+      if (top < this.top) this.top = top;
+      if (right > this.right) this.right = right;
+      if (bottom > this.bottom) this.bottom = bottom;
+    }
+  }
+
+  public void union(DirtyRegion that) {
+    if (!that.empty) {
+      union(that.left, that.top, that.right, that.bottom);
+    }
+  }
+
+  public void set(DirtyRegion that) {
+    left = that.left;
+    top = that.top;
+    right = that.right;
+    bottom = that.bottom;
+    empty = that.empty;
+  }
+
+  /**
+   * Shrinks the region to the part within 0,0 - width,height.
+   */
+  public void clip(int width, int height) {
+    if (empty) {
+      return;
+    }
+    if (left < 0) left = 0;
+    if (top < 0) top = 0;
+    if (right > width) right = width;
+    if (bottom > height) bottom = height;
+    empty = left >= right || top >= bottom;
+  }
+
+  /**
+   * Returns the area of the region, as a long as it may be large.
+   */
+  public long area() {
+    return empty ? 0 : (long) (right - left) * (bottom - top);
+  }
+
+  public int getLeft() {
+    return left;
+  }
+
+  public int getTop() {
+    return top;
+  }
+
+  public int getRight() {
+    return right;
+  }
+
+  public int getBottom() {
+    return bottom;
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * The sprites making up one frame, in drawing order, with the moving shapes
+ * interpolated to where they are at the time of the frame. Built from a
+ * {@link WorldSnapshot} without allocating once it has grown to size.
+ *
+ * @author czhang
+ */
+public class DrawList {
+  private int size;
+
+  /** Sprite index and top left of each entry. */
+  private int[] sprites = new int[16];
+  private int[] xs = new int[16];
+  private int[] ys = new int[16];
+
+  /** Bounds of the entries that move: Careys and Winnie. */
+  private final DirtyRegion movingBounds = new DirtyRegion();
+
+  /**
+   * Fills the list with the treats, then the Careys, then Winnie.
+   *
+   * @param alpha how far between the previous and the last tick of the
+   *     snapshot the frame is
+   * @param winnieSpriteBase sprite index of the first Winnie image, and so on
+   */
+  public void build(WorldSnapshot snapshot, float alpha, int winnieSpriteBase,
+      int careySpriteBase, int treatSpriteBase) {
+    EntityStore treats = snapshot.getTreats();
+    EntityStore careys = snapshot.getCareys();
+    size = 0;
+    ensureCapacity(treats.size() + careys.size() + 1);
+    movingBounds.clear();
+
+    for (int i = 0; i < treats.size(); i++) {
+      add(treatSpriteBase + treats.getSprite(i), treats.getLeft(i), treats.getTop(i));
+    }
+    for (int i = 0; i < careys.size(); i++) {
+      int left = interpolate(careys.getPrevLeft(i), careys.getLeft(i), alpha);
+      int top = interpolate(careys.getPrevTop(i), careys.getTop(i), alpha);
+      add(careySpriteBase + careys.getSprite(i), left, top);
+      movingBounds.union(left, top, left + Carey.SIZE_DP, top + Carey.SIZE_DP);
+    }
+    if (snapshot.hasWinnie()) {
+      int left = snapshot.getWinnieLeft();
+      int top = snapshot.getWinnieTop();
+      add(winnieSpriteBase + snapshot.getWinnieSprite(), left, top);
+      movingBounds.union(left, top, left + Winnie.SIZE_DP, top + Winnie.SIZE_DP);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getSprite(int i) {
+    return sprites[i];
+  }
+
+  public int getX(int i) {
+    return xs[i];
+  }
+
+  public int getY(int i) {
+    return ys[i];
+  }
+
+  public DirtyRegion getMovingBounds() {
+    return movingBounds;
+  }
+
+  private void add(int sprite, int x, int y) {
+    sprites[size] = sprite;
+    xs[size] = x;
+    ys[size] = y;
+    size++;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= sprites.length) {
+      return;
+    }
+    int length = Math.max(capacity, sprites.length * 2);
+    sprites = ArrayUtils.copyOf(sprites, length);
+    xs = ArrayUtils.copyOf(xs, length);
+    ys = ArrayUtils.copyOf(ys, length);
+  }
+
+  /**
+   * Returns the position {@code alpha} of the way from {@code from} to {@code to}.
+   */
+  private static int interpolate(int from, int to, float alpha) {
+    return from + Math.round((to - from) * alpha);
+  }
+}
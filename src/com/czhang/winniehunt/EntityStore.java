@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Stores a population of same-sized shapes, e.g. all the Careys, as parallel
+ * primitive arrays indexed from 0 to {@code size() - 1}. Iterating over the
+ * arrays touches no other objects and creates no garbage.
+ *
+ * <p>Removing an entity moves the last entity into its slot, so indices are
+ * only stable until the next removal. {@link Carey} and {@link Treat} are
+ * views onto an index in a store.
+ *
+ * @author czhang
+ */
+public class EntityStore {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Width and height of every entity. */
+  private final int entitySize;
+
+  private int size;
+
+  /** Top left coordinates. */
+  private int[] left, top;
+
+  /** Top left coordinates before the last step, used to interpolate drawing. */
+  private int[] prevLeft, prevTop;
+
+  /** Velocity, in dp per simulation tick. */
+  private int[] dx, dy;
+
+  /** Index of the image used to draw each entity. */
+  private int[] sprite;
+
+  private boolean[] eaten;
+
+  public EntityStore(int entitySize) {
+    this.entitySize = entitySize;
+    left = new int[INITIAL_CAPACITY];
+    top = new int[INITIAL_CAPACITY];
+    prevLeft = new int[INITIAL_CAPACITY];
+    prevTop = new int[INITIAL_CAPACITY];
+    dx = new int[INITIAL_CAPACITY];
+    dy = new int[INITIAL_CAPACITY];
+    sprite = new int[INITIAL_CAPACITY];
+    eaten = new boolean[INITIAL_CAPACITY];
+  }
+
+  public int getEntitySize() {
+    return entitySize;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all entities. Keeps the allocated capacity.
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Adds an entity with its top left at x,y and returns its index.
+   */
+  public int add(int x, int y, int dx, int dy, int sprite) {
+    ensureCapacity(size + 1);
+    int i = size++;
+    left[i] = x;
+    top[i] = y;
+    prevLeft[i] = x;
+    prevTop[i] = y;
+    this.dx[i] = dx;
+    this.dy[i] = dy;
+    this.sprite[i] = sprite;
+    eaten[i] = false;
+    return i;
+  }
+
+  /**
+   * Removes the entity at index i by moving the last entity into its place.
+   * Returns the old index of the moved entity, or -1 if i was the last.
+   */
+  public int remove(int i) {
+    int last = --size;
+    if (i == last) {
+      return -1;
+    }
+    left[i] = left[last];
+    top[i] = top[last];
+    prevLeft[i] = prevLeft[last];
+    prevTop[i] = prevTop[last];
+    dx[i] = dx[last];
+    dy[i] = dy[last];
+    sprite[i] = sprite[last];
+    eaten[i] = eaten[last];
+    return last;
+  }
+
+  /**
+   * Makes this store an exact copy of {@code that}, which must hold entities
+   * of the same size.
+   */
+  public void copyFrom(EntityStore that) {
+    ensureCapacity(that.size);
+    size = that.size;
+    System.arraycopy(that.left, 0, left, 0, size);
+    System.arraycopy(that.top, 0, top, 0, size);
+    System.arraycopy(that.prevLeft, 0, prevLeft, 0, size);
+    System.arraycopy(that.prevTop, 0, prevTop, 0, size);
+    System.arraycopy(that.dx, 0, dx, 0, size);
+    System.arraycopy(that.dy, 0, dy, 0, size);
+    System.arraycopy(that.sprite, 0, sprite, 0, size);
+    System.arraycopy(that.eaten, 0, eaten, 0, size);
+  }
+
+  public int getLeft(int i) {
+    return left[i];
+  }
+
+  public int getTop(int i) {
+    return top[i];
+  }
+
+  public int getPrevLeft(int i) {
+    return prevLeft[i];
+  }
+
+  public int getPrevTop(int i) {
+    return prevTop[i];
+  }
+
+  public int getDx(int i) {
+    return dx[i];
+  }
+
+  public int getDy(int i) {
+    return dy[i];
+  }
+
+  public int getSprite(int i) {
+    return sprite[i];
+  }
+
+  public boolean isEaten(int i) {
+    return eaten[i];
+  }
+
+  public void setEaten(int i, boolean eaten) {
+    this.eaten[i] = eaten;
+  }
+
+  public void setVelocity(int i, int dx, int dy) {
+    this.dx[i] = dx;
+    this.dy[i] = dy;
+  }
+
+  /**
+   * Moves the entity by its velocity, remembering where it was.
+   */
+  public void offset(int i) {
+    prevLeft[i] = left[i];
+    prevTop[i] = top[i];
+    left[i] += dx[i];
+    top[i] += dy[i];
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= left.length) {
+      return;
+    }
+    int length = Math.max(capacity, left.length * 2);
+    left = ArrayUtils.copyOf(left, length);
+    top = ArrayUtils.copyOf(top, length);
+    prevLeft = ArrayUtils.copyOf(prevLeft, length);
+    prevTop = ArrayUtils.copyOf(prevTop, length);
+    dx = ArrayUtils.copyOf(dx, length);
+    dy = ArrayUtils.copyOf(dy, length);
+    sprite = ArrayUtils.copyOf(sprite, length);
+    eaten = ArrayUtils.copyOf(eaten, length);
+  }
+}
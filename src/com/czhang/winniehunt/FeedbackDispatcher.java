@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread performing the feedback of game events, like vibrating, away from
+ * the game thread. The game thread posts events to a bounded lock-free
+ * queue with {@link #post(int, int)}, which never blocks; this thread passes
+ * them on to a {@link Handler}.
+ *
+ * <p>Events of a type posted in a burst reach the handler as one call with
+ * their count, and each type reaches the handler at most once per its
+ * minimum interval. Events arriving sooner wait and are merged into the
+ * next call.
+ *
+ * @author czhang
+ */
+public class FeedbackDispatcher extends Thread {
+  /**
+   * Performs the feedback. Called on the dispatcher thread.
+   */
+  public interface Handler {
+    /**
+     * @param type type of the events
+     * @param count number of events merged into this call
+     * @param value value of the last of them
+     */
+    void onFeedback(int type, int count, int value);
+  }
+
+  private final Handler handler;
+
+  /** Minimum time between calls for each type, in nanoseconds. */
+  private final long[] minIntervals;
+
+  private final int mask;
+  private final int[] types, values;
+
+  /** Number of events ever read. Only written by the dispatcher thread. */
+  private volatile long head;
+
+  /** Number of events ever posted. Only written by the posting thread. */
+  private volatile long tail;
+
+  /** Number of events dropped because the queue was full. */
+  private volatile int dropped;
+
+  /** Events of each type waiting for the handler. Only used by the dispatcher thread. */
+  private final int[] pendingCounts, pendingValues;
+
+  /** When the handler was last called for each type. */
+  private final long[] lastCalls;
+
+  private volatile boolean running = true;
+
+  /**
+   * @param handler performs the feedback
+   * @param minIntervals minimum time between handler calls for each event
+   *     type, in nanoseconds. Types are indexes into it.
+   * @param capacity number of events that can be waiting, rounded up to a
+   *     power of two
+   */
+  public FeedbackDispatcher(Handler handler, long[] minIntervals, int capacity) {
+    super("FeedbackDispatcher");
+    this.handler = handler;
+    this.minIntervals = minIntervals;
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    mask = size - 1;
+    types = new int[size];
+    values = new int[size];
+    pendingCounts = new int[minIntervals.length];
+    pendingValues = new int[minIntervals.length];
+    lastCalls = new long[minIntervals.length];
+  }
+
+  /**
+   * Posts an event. Called by one thread only, e.g. the game thread; never
+   * blocks. Returns false and drops the event if the queue is full.
+   */
+  public boolean post(int type, int value) {
+    long t = tail;
+    if (t - head > mask) {
+      dropped++;
+      return false;
+    }
+    int i = (int) t & mask;
+    types[i] = type;
+    values[i] = value;
+    // Publishing the new tail makes the writes above visible to the dispatcher.
+    tail = t + 1;
+    LockSupport.unpark(this);
+    return true;
+  }
+
+  public int getDropped() {
+    return dropped;
+  }
+
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    for (int type = 0; type < lastCalls.length; type++) {
+      lastCalls[type] = start - minIntervals[type];
+    }
+
+    while (running) {
+      drain();
+      long wait = dispatch(System.nanoTime());
+      if (head != tail) {
+        continue;
+      }
+      // post() unparks, so an event posted since draining is not missed.
+      if (wait < 0) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, wait);
+      }
+    }
+  }
+
+  /**
+   * Moves the queued events to the pending counts.
+   */
+  private void drain() {
+    long h = head;
+    long t = tail;
+    for (long n = h; n < t; n++) {
+      int i = (int) n & mask;
+      pendingCounts[types[i]]++;
+      pendingValues[types[i]] = values[i];
+    }
+    // Publishing the new head lets the posting thread reuse the slots.
+    head = t;
+  }
+
+  /**
+   * Calls the handler for each type with pending events whose interval has
+   * passed. Returns the time until the next type is due, or -1 if none is
+   * pending.
+   */
+  private long dispatch(long now) {
+    long wait = -1;
+    for (int type = 0; type < pendingCounts.length; type++) {
+      if (pendingCounts[type] == 0) {
+        continue;
+      }
+      long due = lastCalls[type] + minIntervals[type] - now;
+      if (due <= 0) {
+        handler.onFeedback(type, pendingCounts[type], pendingValues[type]);
+        pendingCounts[type] = 0;
+        lastCalls[type] = now;
+      } else if (wait < 0 || due < wait) {
+        wait = due;
+      }
+    }
+    return wait;
+  }
+
+  /**
+   * Stops the thread, dropping the events still waiting, and waits for it
+   * to exit.
+   */
+  public void quit() {
+    running = false;
+    LockSupport.unpark(this);
+    boolean retry = true;
+    while (retry && isAlive()) {
+      try {
+        join();
+        retry = false;
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Paces a fixed-timestep game loop. The simulation is stepped a whole number
+ * of ticks per frame at a fixed rate, independent of how fast frames are
+ * drawn, and frames are limited to a target rate. The fraction of a tick left
+ * over is exposed so rendering can interpolate between the last two ticks.
+ *
+ * <p>All times are in nanoseconds, e.g. from {@link System#nanoTime()}.
+ *
+ * @author czhang
+ */
+public class FrameClock {
+  public static final int DEFAULT_TICKS_PER_SECOND = 60;
+  public static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+  /**
+   * Maximum number of ticks run for one frame. If we fall further behind than
+   * this (e.g. the thread was descheduled) the extra time is dropped rather
+   * than trying to catch up.
+   */
+  private static final int MAX_TICKS_PER_FRAME = 5;
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  /** Duration of one simulation tick. */
+  private long tickNanos;
+
+  /** Minimum duration of one rendered frame. */
+  private long frameNanos;
+
+  /** Simulation time not yet consumed by a tick. Always less than a tick after advance(). */
+  private long accumulator;
+
+  /** Time of the last call to advance(), or -1 if not started. */
+  private long lastTime = -1;
+
+  /** Earliest time at which the next frame should be started. */
+  private long nextFrameTime;
+
+  public FrameClock() {
+    setTicksPerSecond(DEFAULT_TICKS_PER_SECOND);
+    setFramesPerSecond(DEFAULT_FRAMES_PER_SECOND);
+  }
+
+  public void setTicksPerSecond(int ticksPerSecond) {
+    if (ticksPerSecond <= 0) {
+      throw new IllegalArgumentException("ticksPerSecond must be positive: " + ticksPerSecond);
+    }
+    tickNanos = NANOS_PER_SECOND / ticksPerSecond;
+  }
+
+  public void setFramesPerSecond(int framesPerSecond) {
+    if (framesPerSecond <= 0) {
+      throw new IllegalArgumentException("framesPerSecond must be positive: " + framesPerSecond);
+    }
+    frameNanos = NANOS_PER_SECOND / framesPerSecond;
+  }
+
+  public long getTickNanos() {
+    return tickNanos;
+  }
+
+  /**
+   * Forgets elapsed time, e.g. after the loop was paused. The next call to
+   * {@link #advance(long)} runs no ticks.
+   */
+  public void reset() {
+    lastTime = -1;
+    accumulator = 0;
+  }
+
+  /**
+   * Starts a frame at time {@code now} and returns the number of ticks the
+   * simulation should be stepped for it.
+   */
+  public int advance(long now) {
+    if (lastTime < 0) {
+      lastTime = now;
+      nextFrameTime = now;
+    }
+    accumulator += now - lastTime;
+    lastTime = now;
+
+    int ticks = (int) Math.min(accumulator / tickNanos, MAX_TICKS_PER_FRAME);
+    accumulator -= ticks * tickNanos;
+    if (accumulator >= tickNanos) {
+      accumulator %= tickNanos;
+    }
+
+    nextFrameTime = Math.max(nextFrameTime + frameNanos, now);
+    return ticks;
+  }
+
+  /**
+   * Returns how far between the previous and the next tick the current frame
+   * is, between 0 and 1. Used to interpolate positions when rendering.
+   */
+  public float getAlpha() {
+    return (float) accumulator / tickNanos;
+  }
+
+  /**
+   * Returns how long the loop may sleep before starting the next frame, or 0
+   * if it is already due.
+   */
+  public long nanosUntilNextFrame(long now) {
+    return Math.max(0, nextFrameTime - now);
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Draws a frame of the game onto a {@link Renderer}: the background, the
+ * sprites of a {@link DrawList}, the text overlay for the state of the game
+ * and optionally the stats HUD. Shared by the game and the headless tools,
+ * so both draw the same frames. Does not allocate once set up.
+ *
+ * @author czhang
+ */
+public class FrameDrawer {
+  public static final int BACKGROUND_COLOR = 0xff000000;
+  public static final int TEXT_COLOR = 0xffffffff;
+
+  /** Size of the overlay text, and the space between its lines. */
+  private static final int TEXT_SIZE = 50;
+
+  /** Size of the HUD text, and the space between its lines. */
+  private static final int HUD_TEXT_SIZE = 20;
+  private static final int HUD_LINE_HEIGHT = HUD_TEXT_SIZE + 4;
+  private static final int HUD_LINES = 2;
+
+  /** Height of the strip at the top of the screen the HUD is drawn in. */
+  public static final int HUD_HEIGHT = HUD_LINES * HUD_LINE_HEIGHT;
+
+  /** How often the HUD text is refreshed, so it stays readable. */
+  private static final long HUD_UPDATE_NANOS = 500000000L;
+
+  /** Characters kept per line of text. */
+  private static final int MAX_LINE_LENGTH = 64;
+
+  /** Overlay messages. */
+  private final String messageReady, messageDone1, messageDone2, messagePaused;
+
+  /** Loading progress shown on the READY screen, or null. */
+  private String messageLoading;
+
+  /** Quality level shown in the HUD. */
+  private QualityGovernor.Level qualityLevel = QualityGovernor.Level.HIGH;
+
+  /** Text overlay for {@link #overlayState}. */
+  private final TextBlock overlay = new TextBlock(2, MAX_LINE_LENGTH, TEXT_SIZE, TEXT_SIZE,
+      TextBlock.ALIGN_CENTER, TEXT_COLOR);
+  private GameWorld.State overlayState;
+  private boolean overlayStale = true;
+
+  /** HUD text, rebuilt every {@link #HUD_UPDATE_NANOS}. */
+  private final TextBlock hud = new TextBlock(HUD_LINES, MAX_LINE_LENGTH, HUD_TEXT_SIZE,
+      HUD_LINE_HEIGHT, TextBlock.ALIGN_LEFT, TEXT_COLOR);
+  private final StringBuilder hudBuilder = new StringBuilder();
+  private long hudUpdateTime = -1;
+
+  public FrameDrawer(String messageReady, String messageDone1, String messageDone2,
+      String messagePaused) {
+    this.messageReady = messageReady;
+    this.messageDone1 = messageDone1;
+    this.messageDone2 = messageDone2;
+    this.messagePaused = messagePaused;
+  }
+
+  /**
+   * Sets the loading progress shown under the READY message, or null for
+   * none.
+   */
+  public void setLoadingMessage(String messageLoading) {
+    if (messageLoading == null ? this.messageLoading != null
+        : !messageLoading.equals(this.messageLoading)) {
+      this.messageLoading = messageLoading;
+      overlayStale = true;
+    }
+  }
+
+  /**
+   * Sets the quality level shown in the HUD.
+   */
+  public void setQualityLevel(QualityGovernor.Level qualityLevel) {
+    if (qualityLevel != this.qualityLevel) {
+      this.qualityLevel = qualityLevel;
+      // Show it right away rather than at the next refresh.
+      hudUpdateTime = -1;
+    }
+  }
+
+  /**
+   * Draws the frame for the snapshot, whose sprites are in {@code drawList}.
+   * Does not present it.
+   *
+   * @param stats stats to show in the HUD, or null for no HUD
+   * @param now time of the frame, in nanoseconds
+   */
+  public void draw(Renderer renderer, WorldSnapshot snapshot, DrawList drawList,
+      FrameStats stats, long now) {
+    renderer.clear(BACKGROUND_COLOR);
+
+    // Always draw these, regardless of the state.
+    for (int i = 0; i < drawList.size(); i++) {
+      renderer.drawSprite(drawList.getSprite(i), drawList.getX(i), drawList.getY(i));
+    }
+
+    // For certain states, we want to draw a text overlay.
+    GameWorld.State state = snapshot.getState();
+    if (state != overlayState || overlayStale) {
+      layoutOverlay(state);
+    }
+    int lines = overlay.getLineCount();
+    if (lines > 0) {
+      renderer.drawText(overlay, snapshot.getCanvasWidth() / 2,
+          snapshot.getCanvasHeight() / 2 - (lines - 1) * TEXT_SIZE / 2);
+    }
+
+    if (stats != null) {
+      if (hudUpdateTime < 0 || now - hudUpdateTime >= HUD_UPDATE_NANOS) {
+        hudUpdateTime = now;
+        updateHud(snapshot, stats);
+      }
+      renderer.drawText(hud, HUD_LINE_HEIGHT / 4, HUD_LINE_HEIGHT - HUD_LINE_HEIGHT / 4);
+    }
+  }
+
+  private void layoutOverlay(GameWorld.State state) {
+    overlay.clear();
+    switch (state) {
+      case READY:
+        overlay.addLine(messageReady);
+        if (messageLoading != null) {
+          overlay.addLine(messageLoading);
+        }
+        break;
+      case END:
+        overlay.addLine(messageDone1);
+        overlay.addLine(messageDone2);
+        break;
+      case PAUSE:
+        overlay.addLine(messagePaused);
+        break;
+      default:
+        break;
+    }
+    overlayState = state;
+    overlayStale = false;
+  }
+
+  /**
+   * Rebuilds the HUD: the frame rate, frame and tick times, entity counts
+   * and quality level.
+   */
+  private void updateHud(WorldSnapshot snapshot, FrameStats stats) {
+    hud.clear();
+    StringBuilder line = hudBuilder;
+    line.setLength(0);
+    line.append("FPS ");
+    appendTenths(line, Math.round(stats.getFrameRate() * 10));
+    line.append("  frame p50 ");
+    appendMillis(line, stats.getPercentile(FrameStats.Phase.FRAME, 50));
+    line.append(" p99 ");
+    appendMillis(line, stats.getPercentile(FrameStats.Phase.FRAME, 99));
+    hud.addLine(line);
+
+    line.setLength(0);
+    line.append("tick p99 ");
+    appendMillis(line, stats.getPercentile(FrameStats.Phase.TICK, 99));
+    line.append("  careys ").append(snapshot.getCareys().size());
+    line.append("  treats ").append(snapshot.getTreats().size());
+    line.append("  ").append(qualityLevel.name());
+    hud.addLine(line);
+  }
+
+  /**
+   * Appends a duration in nanoseconds as milliseconds with one decimal,
+   * without allocating.
+   */
+  private static void appendMillis(StringBuilder builder, long nanos) {
+    appendTenths(builder, (nanos + 50000) / 100000);
+    builder.append("ms");
+  }
+
+  private static void appendTenths(StringBuilder builder, long tenths) {
+    builder.append(tenths / 10).append('.').append(tenths % 10);
+  }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.PrintWriter;
+
+/**
+ * Durations of each phase of the game loop, kept in a {@link Histogram} per
+ * phase, plus the current frame rate. Written by the simulation and render
+ * threads and read by the HUD and when dumping, so all methods are
+ * synchronized; recording a sample takes the lock briefly and never
+ * allocates.
+ *
+ * @author czhang
+ */
+public class FrameStats {
+  /**
+   * Phases of the game loop that are timed.
+   */
+  public enum Phase {
+    /** One world step, on the simulation thread. */
+    TICK,
+    /** Copying the world into a snapshot and publishing it. */
+    PUBLISH,
+    /** Building the draw list and dirty region. */
+    PREPARE,
+    /** SurfaceHolder.lockCanvas(). */
+    LOCK,
+    /** Drawing the frame onto the canvas. */
+    DRAW,
+    /** SurfaceHolder.unlockCanvasAndPost(). */
+    POST,
+    /** From the start of one frame to the start of the next. */
+    FRAME
+  }
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  /** Percentiles written by dump(). */
+  private static final double[] PERCENTILES = new double[] {50, 90, 99, 99.9};
+  private static final String[] PERCENTILE_LABELS = new String[] {"p50", "p90", "p99", "p99.9"};
+
+  private final Histogram[] histograms;
+
+  /** Frames and their total duration since the frame rate was last computed. */
+  private int windowFrames;
+  private long windowNanos;
+
+  /** Frames per second over the last second or so of frames. */
+  private float frameRate;
+
+  public FrameStats() {
+    histograms = new Histogram[Phase.values().length];
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  public synchronized void record(Phase phase, long nanos) {
+    histograms[phase.ordinal()].record(nanos);
+    if (phase == Phase.FRAME) {
+      windowFrames++;
+      windowNanos += nanos;
+      if (windowNanos >= NANOS_PER_SECOND) {
+        frameRate = (float) windowFrames * NANOS_PER_SECOND / windowNanos;
+        windowFrames = 0;
+        windowNanos = 0;
+      }
+    }
+  }
+
+  public synchronized float getFrameRate() {
+    return frameRate;
+  }
+
+  public synchronized long getPercentile(Phase phase, double percentile) {
+    return histograms[phase.ordinal()].getPercentile(percentile);
+  }
+
+  public synchronized long getCount(Phase phase) {
+    return histograms[phase.ordinal()].getCount();
+  }
+
+  public synchronized void reset() {
+    for (Histogram histogram : histograms) {
+      histogram.reset();
+    }
+    windowFrames = 0;
+    windowNanos = 0;
+    frameRate = 0;
+  }
+
+  /**
+   * Writes a summary of every phase followed by its non-empty buckets, in
+   * milliseconds, e.g. to attach to a bug report.
+   */
+  public synchronized void dump(PrintWriter out) {
+    out.printf("frame rate: %.1f fps%n", frameRate);
+    out.printf("%-8s %8s %9s %9s", "phase", "count", "min", "mean");
+    for (String label : PERCENTILE_LABELS) {
+      out.printf(" %9s", label);
+    }
+    out.printf(" %9s%n", "max");
+    for (Phase phase : Phase.values()) {
+      Histogram histogram = histograms[phase.ordinal()];
+      out.printf("%-8s %8d %9.3f %9.3f", phase, histogram.getCount(),
+          histogram.getMin() / NANOS_PER_MILLI, histogram.getMean() / NANOS_PER_MILLI);
+      for (double percentile : PERCENTILES) {
+        out.printf(" %9.3f", histogram.getPercentile(percentile) / NANOS_PER_MILLI);
+      }
+      out.printf(" %9.3f%n", histogram.getMax() / NANOS_PER_MILLI);
+    }
+
+    for (Phase phase : Phase.values()) {
+      Histogram histogram = histograms[phase.ordinal()];
+      out.println();
+      out.println(phase + " buckets (ms from, count):");
+      for (int i = 0; i < histogram.getBucketCount(); i++) {
+        long count = histogram.getBucketCountAt(i);
+        if (count > 0) {
+          out.printf("%.4f %d%n", Histogram.lowerBound(i) / NANOS_PER_MILLI, count);
+        }
+      }
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Seeded random number generator for the simulation (SplitMix64). Unlike
+ * java.util.Random and Math.random() its whole state is one long that can be
+ * read and restored, and its output is the same on every JVM, so a game can
+ * be replayed exactly from its seed.
+ *
+ * @author czhang
+ */
+public final class GameRandom {
+  private long state;
+
+  public GameRandom(long seed) {
+    state = seed;
+  }
+
+  public long getState() {
+    return state;
+  }
+
+  public void setState(long state) {
+    this.state = state;
+  }
+
+  public long nextLong() {
+    long z = (state += 0x9E3779B97F4A7C15L);
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Returns a value between 0 (inclusive) and {@code bound} (exclusive).
+   */
+  public int nextInt(int bound) {
+    if (bound <= 0) {
+      throw new IllegalArgumentException("bound must be positive: " + bound);
+    }
+    // Scale the top 32 bits into range. The bias is negligible for the
+    // small bounds used here.
+    return (int) (((nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  public boolean nextBoolean() {
+    return nextLong() < 0;
+  }
+
+  /**
+   * Returns a value between 0 (inclusive) and 1 (exclusive).
+   */
+  public double nextDouble() {
+    return (nextLong() >>> 11) * 0x1.0p-53;
+  }
+}
@@ -0,0 +1,702 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * The gameplay simulation: world state, stepping, collision and spawning.
+ * Has no dependencies on Android so it can be driven headlessly, e.g. to
+ * measure the cost of a single step on a plain JVM.
+ *
+ * <p>All randomness comes from one seeded {@link GameRandom}, so the same
+ * seed and the same inputs always play out the same way; see
+ * {@link ReplayRecorder}.
+ *
+ * <p>Not thread safe. Callers are expected to synchronize access.
+ *
+ * @author czhang
+ */
+public class GameWorld {
+  private static final int NUM_TREATS = 10;
+
+  /** Distance from Winnie's center within which no Carey's can be generated. */
+  private static final int SAFE_ZONE_RADIUS = 100;
+
+  /** Distance from Winnie's center within which no treats are generated. */
+  private static final int TREAT_CLEAR_RADIUS = Winnie.SIZE_DP;
+
+  /**
+   * Default number of Careys below which they are stepped on one thread,
+   * as handing work to other threads costs more than it saves.
+   */
+  public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+  /** Maximum delay between taps to count as double tap. */
+  private static final int DOUBLE_TAP_DELAY_MS = 250;
+
+  /**
+   * Passed to checkWinnie() when the Careys were not checked yet, and have
+   * not moved or have all just been stepped, respectively.
+   */
+  private static final int CAREYS_NOT_CHECKED = -2;
+  private static final int CAREYS_STEPPED = -3;
+
+  /**
+   * Enum for the state of the game.
+   */
+  public enum State {
+    PAUSE,
+    READY,    // Display "tap to start" overlay.
+    RUNNING,
+    END       // Display "Carey caught Winnie FOREVERRRR" overlay.
+  }
+
+  /**
+   * Receives notifications of gameplay events. Called on the thread that
+   * steps the world.
+   */
+  public interface Listener {
+    /** Winnie ate a treat. The view is only valid during the call. */
+    void onTreatEaten(Treat treat);
+
+    /**
+     * A Carey caught Winnie. The world has moved to the END {@link State}.
+     * The view is only valid during the call.
+     */
+    void onCaught(Carey carey);
+
+    /** All treats were eaten, new treats and another Carey were added. */
+    void onWaveCleared(int wave);
+  }
+
+  /** Seed {@link #rand} started from. */
+  private final long seed;
+
+  /** Random number generator used for placing shapes and picking images. */
+  private final GameRandom rand;
+
+  /** Picks where new treats and Careys go. */
+  private final SpawnPlacer spawnPlacer;
+
+  /** Number of images available for each kind of shape. */
+  private final int numWinnieSprites, numCareySprites, numTreatSprites;
+
+  /** Receives gameplay events, may be null. */
+  private Listener listener;
+
+  /** State of the game. */
+  private State state;
+
+  /** State to return to when unpaused. */
+  private State stateBeforePause;
+
+  /**
+   * Time of the last tap event or 0 if never set.
+   * Only set when handling touches in the END {@link State}.
+   */
+  private long lastTapTime;
+
+  /** Canvas dimensions. */
+  private int canvasWidth, canvasHeight;
+
+  /** All the treats yet to be eaten. Eaten treats are removed. */
+  private final EntityStore treats = new EntityStore(Treat.SIZE_DP);
+
+  /** All the Careys. */
+  private final EntityStore careys = new EntityStore(Carey.SIZE_DP);
+
+  /** Views reused when reporting events to the listener. */
+  private final Treat treatView = new Treat(treats, 0);
+  private final Carey careyView = new Carey(careys, 0);
+
+  /**
+   * Broad phase for collisions with Winnie, keyed by index in {@link #treats}
+   * and {@link #careys} respectively.
+   */
+  private final SpatialGrid treatGrid = new SpatialGrid(Treat.SIZE_DP);
+  private final SpatialGrid careyGrid = new SpatialGrid(Carey.SIZE_DP);
+
+  /** Set by {@link #findCareyOnPath} to how far along her move Winnie was caught. */
+  private double contactTime;
+
+  /** The Winnie, null until the layout is set up. */
+  private Winnie winnie;
+
+  /**
+   * Image index used so Carey images chosen in sequential order.
+   * Between 0 and {@code numCareySprites - 1}.
+   */
+  private int careyImageIndex;
+
+  /** Number of waves cleared since the last reset. */
+  private int wave;
+
+  /** Number of treats eaten since the last reset. */
+  private int score;
+
+  /** Steps the Careys on several threads, null to always step them serially. */
+  private ParallelStepper parallelStepper;
+
+  /** Number of Careys from which {@link #parallelStepper} is used. */
+  private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+  /**
+   * Creates a world seeded from the clock.
+   */
+  public GameWorld(int numWinnieSprites, int numCareySprites, int numTreatSprites) {
+    this(System.nanoTime(), numWinnieSprites, numCareySprites, numTreatSprites);
+  }
+
+  public GameWorld(long seed, int numWinnieSprites, int numCareySprites, int numTreatSprites) {
+    this.seed = seed;
+    rand = new GameRandom(seed);
+    spawnPlacer = new SpawnPlacer(rand);
+    this.numWinnieSprites = numWinnieSprites;
+    this.numCareySprites = numCareySprites;
+    this.numTreatSprites = numTreatSprites;
+    careyImageIndex = rand.nextInt(numCareySprites);
+    state = State.READY;
+  }
+
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public void setSize(int width, int height) {
+    canvasWidth = width;
+    canvasHeight = height;
+
+    // Rebuild the grids to cover the new area.
+    treatGrid.resize(width, height);
+    for (int i = 0; i < treats.size(); i++) {
+      treatGrid.insert(i, treats.getLeft(i), treats.getTop(i));
+    }
+    careyGrid.resize(width, height);
+    for (int i = 0; i < careys.size(); i++) {
+      careyGrid.insert(i, careys.getLeft(i), careys.getTop(i));
+    }
+  }
+
+  /**
+   * Sets up the visible parts of the game. Requires that the size be set
+   * already to function properly.
+   */
+  public void setupLayout() {
+    // Winnie first, so nothing is placed on top of her.
+    setupWinnie();
+    setupTreats();
+    addCarey();
+  }
+
+  /**
+   * Resets the game. Winnie in the center, one Carey.
+   */
+  public void reset() {
+    // Move Winnie to center.
+    setupWinnie();
+
+    // Reset back to one Carey, away from Winnie.
+    careys.clear();
+    careyGrid.clear();
+    addCarey();
+
+    // Reset treats.
+    setupTreats();
+
+    // Reset state.
+    wave = 0;
+    score = 0;
+    state = State.READY;
+  }
+
+  /**
+   * Updates the location of objects based on the physics of things.
+   */
+  public void step() {
+    // Everything is frozen while paused.
+    if (state == State.PAUSE) {
+      return;
+    }
+
+    // Step all the Carey's
+    if (parallelStepper != null && careys.size() >= parallelThreshold) {
+      // Also finds which Carey caught Winnie, so the grid is not needed for it.
+      int caught = parallelStepper.step(careys, canvasWidth, canvasHeight,
+          state == State.RUNNING ? winnie : null);
+      // The grid is still updated here, on one thread: its cells are shared
+      // between the ranges. This is a cheap O(n) pass, as most Careys stay
+      // in their cell.
+      for (int i = 0; i < careys.size(); i++) {
+        careyGrid.move(i, careys.getLeft(i), careys.getTop(i));
+      }
+      if (state == State.RUNNING) {
+        checkWinnie(caught, 0, 0);
+      }
+      return;
+    }
+
+    for (int i = 0; i < careys.size(); i++) {
+      Carey.step(careys, i, canvasWidth, canvasHeight);
+      careyGrid.move(i, careys.getLeft(i), careys.getTop(i));
+    }
+
+    // Stop here if game not in RUNNING state.
+    if (state != State.RUNNING) {
+      return;
+    }
+
+    checkWinnie(CAREYS_STEPPED, 0, 0);
+  }
+
+  /**
+   * Sets how many threads step the Careys once there are at least
+   * {@code threshold} of them. One thread steps them serially. Call with
+   * one thread to stop the extra threads when done with the world.
+   */
+  public void setParallelism(int threads, int threshold) {
+    if (parallelStepper != null) {
+      if (parallelStepper.getThreads() == threads) {
+        parallelThreshold = threshold;
+        return;
+      }
+      parallelStepper.shutdown();
+      parallelStepper = null;
+    }
+    if (threads > 1) {
+      parallelStepper = new ParallelStepper(threads);
+    }
+    parallelThreshold = threshold;
+  }
+
+  /**
+   * Moves Winnie so that she is centered on x,y. While RUNNING, she eats
+   * and is caught at every position she is moved through, not only at the
+   * position she is in when the world is stepped.
+   */
+  public void moveWinnie(int x, int y) {
+    moveWinnie(x, y, false);
+  }
+
+  /**
+   * Moves Winnie so that she is centered on x,y. If {@code sweep}, she eats
+   * and is caught anywhere along the straight line from where she was, so
+   * a fast drag cannot skip over a Carey; otherwise she jumps there.
+   */
+  private void moveWinnie(int x, int y, boolean sweep) {
+    if (winnie == null) {
+      return;
+    }
+    int fromLeft = winnie.getLeft();
+    int fromTop = winnie.getTop();
+    winnie.moveTo(x, y);
+    if (state == State.RUNNING) {
+      if (sweep) {
+        checkWinnie(CAREYS_NOT_CHECKED, winnie.getLeft() - fromLeft, winnie.getTop() - fromTop);
+      } else {
+        checkWinnie(CAREYS_NOT_CHECKED, 0, 0);
+      }
+    }
+  }
+
+  /**
+   * Applies a touch: a tap resumes a paused game and starts a ready one,
+   * Winnie follows the finger while running, and a double tap restarts a
+   * finished game.
+   *
+   * @param action one of the TouchQueue actions
+   * @param timeMs time of the touch, used to detect double taps
+   */
+  public void touch(int action, int x, int y, long timeMs) {
+    switch (state) {
+      case PAUSE:
+        if (action == TouchQueue.ACTION_DOWN) {
+          unpause();
+          if (state == State.RUNNING) {
+            // Like any new press, put Winnie under the finger, so the drag
+            // that follows doesn't sweep her from where she was.
+            moveWinnie(x, y, false);
+          }
+        }
+        break;
+      case READY:
+        if (action == TouchQueue.ACTION_DOWN) {
+          state = State.RUNNING;
+          moveWinnie(x, y, false);
+        }
+        break;
+      case RUNNING:
+        // A new press puts Winnie under the finger; drags move her there.
+        moveWinnie(x, y, action != TouchQueue.ACTION_DOWN);
+        break;
+      case END:
+        if (action == TouchQueue.ACTION_DOWN) {
+          if (timeMs - lastTapTime < DOUBLE_TAP_DELAY_MS) {
+            reset();
+          }
+          lastTapTime = timeMs;
+        }
+        break;
+    }
+  }
+
+  /**
+   * Freezes the game until {@link #unpause()}. Does nothing if already paused.
+   */
+  public void pause() {
+    if (state != State.PAUSE) {
+      stateBeforePause = state;
+      state = State.PAUSE;
+    }
+  }
+
+  /**
+   * Returns to the state the game was paused in. Does nothing if not paused.
+   */
+  public void unpause() {
+    if (state == State.PAUSE) {
+      state = stateBeforePause;
+    }
+  }
+
+  /**
+   * Checks what Winnie ran into on her last move by dx,dy, which is 0,0 if
+   * she has not moved. Treats she reached before any Carey are eaten.
+   *
+   * @param caught index of the Carey already found to catch her,
+   *     {@link ParallelStepper#NONE}, {@link #CAREYS_NOT_CHECKED} or
+   *     {@link #CAREYS_STEPPED}
+   */
+  private void checkWinnie(int caught, int dx, int dy) {
+    double caughtAt = 0;
+    if (caught == CAREYS_NOT_CHECKED) {
+      caught = findCareyOnPath(dx, dy);
+      caughtAt = contactTime;
+    } else if (caught == CAREYS_STEPPED) {
+      caught = findSteppedCarey();
+    }
+
+    // Check overlap treats.
+    checkOverlapTreats(dx, dy, caught == ParallelStepper.NONE ? 1 : caughtAt);
+
+    // If all treats eaten, add another Carey and reset treats.
+    // Otherwise, Winnie is caught if she ran into a Carey.
+    if (treatsRemaining() == 0) {
+      setupTreats();
+      addCarey();
+      wave++;
+      if (listener != null) {
+        listener.onWaveCleared(wave);
+      }
+    } else if (caught != ParallelStepper.NONE) {
+      catchWinnie(careyView.setIndex(caught));
+    }
+  }
+
+  /**
+   * Checks and handles if Winnie overlaps a treat at or before {@code until}
+   * along her last move by dx,dy.
+   */
+  private void checkOverlapTreats(int dx, int dy, double until) {
+    // Eat any overlapping treats.
+    int found = queryPath(treatGrid, dx, dy);
+    for (int i = 0; i < found; i++) {
+      int id = treatGrid.getResult(i);
+      Treat treat = treatView.setIndex(id);
+      double t = winnie.sweep(dx, dy, treat);
+      if (t >= 0 && t <= until) {
+        treat.setEaten(true);
+        score++;
+        if (listener != null) {
+          listener.onTreatEaten(treat);
+        }
+        removeTreat(id);
+      }
+    }
+  }
+
+  /**
+   * Removes the treat at index id, keeping {@link #treatGrid} in sync with
+   * the treat moved into its place.
+   */
+  private void removeTreat(int id) {
+    treatGrid.remove(id);
+    int moved = treats.remove(id);
+    if (moved >= 0) {
+      treatGrid.remove(moved);
+      treatGrid.insert(id, treats.getLeft(id), treats.getTop(id));
+
+      // A treat moved to an index still to be checked this step would be
+      // skipped, so make sure the remaining query results refer to it.
+      treatGrid.renameResult(moved, id);
+    }
+  }
+
+  /**
+   * Returns the index of the first Carey Winnie ran into along her last
+   * move by dx,dy, and sets {@link #contactTime} to when, or returns
+   * {@link ParallelStepper#NONE}. The Careys are assumed not to have moved.
+   */
+  private int findCareyOnPath(int dx, int dy) {
+    int first = ParallelStepper.NONE;
+    contactTime = 1;
+    int found = queryPath(careyGrid, dx, dy);
+    for (int i = 0; i < found; i++) {
+      int id = careyGrid.getResult(i);
+      double t = winnie.sweep(dx, dy, careyView.setIndex(id));
+      if (t >= 0 && (first == ParallelStepper.NONE || t < contactTime)) {
+        first = id;
+        contactTime = t;
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Returns the lowest index of a Carey that ran into Winnie on its last
+   * step, as {@link ParallelStepper} does, or {@link ParallelStepper#NONE}.
+   * Winnie is assumed not to have moved.
+   */
+  private int findSteppedCarey() {
+    // Careys that ended up a step away may have passed through her.
+    int found = careyGrid.query(winnie.getLeft() - Carey.MAX_VELOCITY,
+        winnie.getTop() - Carey.MAX_VELOCITY, winnie.getRight() + Carey.MAX_VELOCITY,
+        winnie.getBottom() + Carey.MAX_VELOCITY);
+    int first = ParallelStepper.NONE;
+    for (int i = 0; i < found; i++) {
+      int id = careyGrid.getResult(i);
+      if ((first == ParallelStepper.NONE || id < first) && Carey.sweep(careys, id, winnie) >= 0) {
+        first = id;
+      }
+    }
+    return first;
+  }
+
+  /**
+   * Queries {@code grid} for the shapes that may overlap Winnie anywhere
+   * along her last move by dx,dy.
+   */
+  private int queryPath(SpatialGrid grid, int dx, int dy) {
+    int left = winnie.getLeft();
+    int top = winnie.getTop();
+    return grid.query(Math.min(left, left - dx), Math.min(top, top - dy),
+        Math.max(left, left - dx) + Winnie.SIZE_DP, Math.max(top, top - dy) + Winnie.SIZE_DP);
+  }
+
+  /**
+   * Ends the game as Winnie was caught by {@code carey}.
+   */
+  private void catchWinnie(Carey carey) {
+    // End the game and move to the next state.
+    state = State.END;
+    if (listener != null) {
+      listener.onCaught(carey);
+    }
+  }
+
+  /**
+   * Creates and populates {@link #treats} with {@link #NUM_TREATS} treats,
+   * not overlapping each other or Winnie where possible.
+   */
+  private void setupTreats() {
+    treats.clear();
+    treatGrid.clear();
+
+    for (int i = 0; i < NUM_TREATS; i++) {
+      placeAwayFromWinnie(Treat.SIZE_DP, TREAT_CLEAR_RADIUS, treatGrid, treats);
+      int x = spawnPlacer.getX();
+      int y = spawnPlacer.getY();
+      int id = treats.add(x, y, 0, 0, rand.nextInt(numTreatSprites));
+      treatGrid.insert(id, x, y);
+    }
+  }
+
+  /**
+   * Places a shape with {@link #spawnPlacer}, at least {@code radius} from
+   * Winnie's center if she exists.
+   */
+  private void placeAwayFromWinnie(int size, int radius, SpatialGrid occupied,
+      EntityStore occupants) {
+    if (winnie == null) {
+      spawnPlacer.place(canvasWidth, canvasHeight, size, 0, 0, 0, occupied, occupants);
+    } else {
+      spawnPlacer.place(canvasWidth, canvasHeight, size,
+          winnie.getCenterX(), winnie.getCenterY(), radius, occupied, occupants);
+    }
+  }
+
+  /**
+   * Returns the number of treats yet to be eaten.
+   */
+  public int treatsRemaining() {
+    return treats.size();
+  }
+
+  /**
+   * Puts Winnie at the center of the screen, creating her the first time.
+   */
+  private void setupWinnie() {
+    // Get center coordinates.
+    int x = (canvasWidth - Winnie.SIZE_DP) / 2;
+    int y = (canvasHeight - Winnie.SIZE_DP) / 2;
+    int sprite = rand.nextInt(numWinnieSprites);
+    if (winnie == null) {
+      winnie = new Winnie(x, y, sprite);
+    } else {
+      winnie.setPosition(x, y);
+      winnie.setSprite(sprite);
+    }
+  }
+
+  /**
+   * Adds another Carey at a random location with a random velocity, outside
+   * the safe zone around Winnie. Careys may overlap each other.
+   */
+  public void addCarey() {
+    placeAwayFromWinnie(Carey.SIZE_DP, SAFE_ZONE_RADIUS, null, null);
+    int x = spawnPlacer.getX();
+    int y = spawnPlacer.getY();
+
+    int id = Carey.add(careys, x, y, nextCareyImageIndex(), rand);
+    careyGrid.insert(id, x, y);
+  }
+
+  /**
+   * Returns the next index for Carey picture.
+   */
+  private int nextCareyImageIndex() {
+    careyImageIndex++;
+    careyImageIndex = (careyImageIndex >= numCareySprites) ? 0 : careyImageIndex;
+    return careyImageIndex;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public void setState(State state) {
+    this.state = state;
+  }
+
+  public int getCanvasWidth() {
+    return canvasWidth;
+  }
+
+  public int getCanvasHeight() {
+    return canvasHeight;
+  }
+
+  public Winnie getWinnie() {
+    return winnie;
+  }
+
+  /**
+   * Returns the store holding all the Careys. Indices are stable until the
+   * world is reset.
+   */
+  public EntityStore getCareys() {
+    return careys;
+  }
+
+  /**
+   * Returns the store holding the treats yet to be eaten. Indices change
+   * when a treat is eaten.
+   */
+  public EntityStore getTreats() {
+    return treats;
+  }
+
+  public int getWave() {
+    return wave;
+  }
+
+  public int getScore() {
+    return score;
+  }
+
+  int getNumWinnieSprites() {
+    return numWinnieSprites;
+  }
+
+  int getNumCareySprites() {
+    return numCareySprites;
+  }
+
+  int getNumTreatSprites() {
+    return numTreatSprites;
+  }
+
+  /** Returns the state to return to when unpaused, or null if never paused. */
+  State getStateBeforePause() {
+    return stateBeforePause;
+  }
+
+  int getCareyImageIndex() {
+    return careyImageIndex;
+  }
+
+  long getRandomState() {
+    return rand.getState();
+  }
+
+  /**
+   * Replaces everything in the world with state read back by
+   * {@link WorldCodec}. The stores are copied.
+   */
+  void restore(long randomState, State state, State stateBeforePause, int careyImageIndex,
+      int wave, int score, int width, int height, int winnieLeft, int winnieTop,
+      int winnieSprite, EntityStore treats, EntityStore careys) {
+    rand.setState(randomState);
+    this.state = state;
+    this.stateBeforePause = stateBeforePause;
+    this.careyImageIndex = careyImageIndex;
+    this.wave = wave;
+    this.score = score;
+    lastTapTime = 0;
+    if (winnie == null) {
+      winnie = new Winnie(winnieLeft, winnieTop, winnieSprite);
+    } else {
+      winnie.setPosition(winnieLeft, winnieTop);
+      winnie.setSprite(winnieSprite);
+    }
+    this.treats.copyFrom(treats);
+    this.careys.copyFrom(careys);
+    // Rebuilds the grids from the stores.
+    setSize(width, height);
+  }
+
+  /**
+   * Returns a hash of everything that affects how the game plays out, used
+   * to check that a replay has not diverged from the recording.
+   */
+  public long checksum() {
+    long hash = rand.getState();
+    hash = hash * 31 + state.ordinal();
+    hash = hash * 31 + wave;
+    hash = hash * 31 + score;
+    hash = hash * 31 + careyImageIndex;
+    if (winnie != null) {
+      hash = hash * 31 + winnie.getLeft();
+      hash = hash * 31 + winnie.getTop();
+      hash = hash * 31 + winnie.getSprite();
+    }
+    hash = hash(hash, careys);
+    hash = hash(hash, treats);
+    return hash;
+  }
+
+  private static long hash(long hash, EntityStore store) {
+    hash = hash * 31 + store.size();
+    for (int i = 0; i < store.size(); i++) {
+      hash = hash * 31 + store.getLeft(i);
+      hash = hash * 31 + store.getTop(i);
+      hash = hash * 31 + store.getDx(i);
+      hash = hash * 31 + store.getDy(i);
+      hash = hash * 31 + store.getSprite(i);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative durations with log-linear buckets: each power of
+ * two is split into {@code 2^(SUB_BUCKET_BITS - 1)} equal buckets, so any
+ * value is known to within about 3% while the whole range from 1 ns to
+ * minutes fits in a fixed array. Recording is a few shifts and an array
+ * increment, and never allocates.
+ *
+ * <p>Not thread safe.
+ *
+ * @author czhang
+ */
+public class Histogram {
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+  /** Values of 2^MAX_MAGNITUDE (about 18 minutes in ns) and above go in the last bucket. */
+  private static final int MAX_MAGNITUDE = 40;
+
+  private static final int BUCKETS =
+      SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts[bucketOf(value)]++;
+    count++;
+    sum += value;
+    if (value < min) min = value;
+    if (value > max) max = value;
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public long getMean() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * Returns the value that {@code percentile} percent of the values are at
+   * or below, rounded up to the top of its bucket. 0 if empty.
+   */
+  public long getPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Math.min(upperBound(i), max);
+      }
+    }
+    return max;
+  }
+
+  /** Number of buckets, for iterating over them with the getBucket methods. */
+  public int getBucketCount() {
+    return BUCKETS;
+  }
+
+  public long getBucketCountAt(int bucket) {
+    return counts[bucket];
+  }
+
+  /** Returns the smallest value that goes in the bucket. */
+  public static long lowerBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int k = bucket - SUB_BUCKETS;
+    int magnitude = k / HALF_SUB_BUCKETS + SUB_BUCKET_BITS;
+    int shift = magnitude - (SUB_BUCKET_BITS - 1);
+    return (long) (k % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS) << shift;
+  }
+
+  /** Returns the largest value that goes in the bucket. */
+  public static long upperBound(int bucket) {
+    if (bucket == BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    return lowerBound(bucket + 1) - 1;
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    if (magnitude >= MAX_MAGNITUDE) {
+      return BUCKETS - 1;
+    }
+    int shift = magnitude - (SUB_BUCKET_BITS - 1);
+    return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS
+        + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+  }
+}
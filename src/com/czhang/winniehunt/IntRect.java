@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Integer rectangle used by the game engine. Mirrors the parts of
+ * {@code android.graphics.Rect} that the game needs so the engine can run
+ * on a plain JVM.
+ *
+ * @author czhang
+ */
+public final class IntRect {
+  public int left, top, right, bottom;
+
+  public IntRect(int left, int top, int right, int bottom) {
+    set(left, top, right, bottom);
+  }
+
+  public void set(int left, int top, int right, int bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+}
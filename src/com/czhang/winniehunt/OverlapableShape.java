@@ -3,62 +3,64 @@
  */
 package com.czhang.winniehunt;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.Rect;
-
 /**
  * Interface for shapes that can overlap each other.
  *
  * @author czhang
  */
 public abstract class OverlapableShape {
-  protected Rect geometry;
-  protected final Paint paint;
-  protected final Bitmap image;
+  public abstract int getLeft();
 
-  public OverlapableShape(Rect geometry, Bitmap bitmap) {
-    this.geometry = geometry;
-    image = bitmap;
+  public abstract int getTop();
 
-    paint = new Paint();
-    paint.setAntiAlias(true);
-  }
+  /** Width and height of the shape. */
+  public abstract int getSize();
 
-  public Rect getGeometry() {
-    return geometry;
-  }
-
-  public int getLeft() {
-    return geometry.left;
-  }
-
-  public int getTop() {
-    return geometry.top;
-  }
+  /** Index of the image used to draw this shape, within the images for its type. */
+  public abstract int getSprite();
 
   public int getRight() {
-    return geometry.right;
+    return getLeft() + getSize();
   }
 
   public int getBottom() {
-    return geometry.bottom;
+    return getTop() + getSize();
   }
 
   public int getCenterX() {
-    return geometry.centerX();
+    return getLeft() + getSize() / 2;
   }
 
   public int getCenterY() {
-    return geometry.centerY();
+    return getTop() + getSize() / 2;
+  }
+
+  /**
+   * Returns the collision area of this shape. Defaults to the whole bounds.
+   */
+  public Hitbox getHitbox() {
+    return Hitbox.FULL;
   }
 
+  /**
+   * Returns true if the hitboxes of the two shapes overlap. Does not modify
+   * either shape.
+   */
   public boolean overlaps(OverlapableShape that) {
-    return this.geometry.intersect(that.getGeometry());
+    return Hitbox.overlaps(
+        this.getHitbox(), getLeft(), getTop(), getRight(), getBottom(),
+        that.getHitbox(), that.getLeft(), that.getTop(), that.getRight(), that.getBottom());
   }
 
-  public void draw(Canvas canvas) {
-    canvas.drawBitmap(image, null, geometry, paint);
+  /**
+   * Returns how far along its last move by dx,dy, which ended where it is
+   * now, this shape first overlapped {@code that}, which is assumed not to
+   * have moved: 0 to 1, or -1 if it did not. See {@link Hitbox#sweep}.
+   */
+  public double sweep(int dx, int dy, OverlapableShape that) {
+    int left = getLeft() - dx;
+    int top = getTop() - dy;
+    return Hitbox.sweep(getHitbox(), left, top, left + getSize(), top + getSize(), dx, dy,
+        that.getHitbox(), that.getLeft(), that.getTop(), that.getRight(), that.getBottom());
   }
 }
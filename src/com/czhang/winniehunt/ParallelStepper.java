@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Steps a large population of Careys on several threads. Each Carey's
+ * bounce only depends on itself, so the store is split into contiguous
+ * ranges, one per thread, and each thread also checks its range against
+ * Winnie. The results are reduced to the lowest index of a Carey that caught
+ * her, so the outcome does not depend on the number of threads.
+ *
+ * <p>The calling thread steps the first range itself. Workers are started
+ * once and wait between steps, so stepping creates no garbage.
+ *
+ * @author czhang
+ */
+public class ParallelStepper {
+  /** Result meaning no Carey caught Winnie. */
+  public static final int NONE = -1;
+
+  /** Lock the workers wait on for the next step, and the caller for the workers. */
+  private final Object lock = new Object();
+
+  private final Thread[] workers;
+
+  /** Lowest index of a Carey that caught Winnie in each range, or NONE. */
+  private final int[] caught;
+
+  /** Number of steps started; workers start a step when it changes. Guarded by lock. */
+  private long generation;
+
+  /** Number of workers yet to finish the current step. Guarded by lock. */
+  private int pending;
+
+  /** If the workers should exit. Guarded by lock. */
+  private boolean shutdown;
+
+  /** Inputs of the current step, published to workers through lock. */
+  private EntityStore careys;
+  private int canvasWidth, canvasHeight;
+  private Winnie winnie;
+
+  /**
+   * Creates a stepper using {@code threads} threads in total, including the
+   * calling thread.
+   */
+  public ParallelStepper(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive: " + threads);
+    }
+    caught = new int[threads];
+    workers = new Thread[threads - 1];
+    for (int i = 0; i < workers.length; i++) {
+      final int range = i + 1;
+      workers[i] = new Thread("ParallelStepper-" + range) {
+        @Override
+        public void run() {
+          work(range);
+        }
+      };
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  public int getThreads() {
+    return caught.length;
+  }
+
+  /**
+   * Steps every Carey in the store once and returns the lowest index of a
+   * Carey that ran into Winnie on the way, or {@link #NONE}. Winnie is not
+   * checked if null. Blocks until all the ranges are done.
+   */
+  public int step(EntityStore careys, int canvasWidth, int canvasHeight, Winnie winnie) {
+    synchronized (lock) {
+      this.careys = careys;
+      this.canvasWidth = canvasWidth;
+      this.canvasHeight = canvasHeight;
+      this.winnie = winnie;
+      pending = workers.length;
+      generation++;
+      lock.notifyAll();
+    }
+
+    stepRange(0);
+
+    synchronized (lock) {
+      while (pending > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          // The workers are still using the store, keep waiting.
+        }
+      }
+      this.careys = null;
+      this.winnie = null;
+    }
+
+    int result = NONE;
+    for (int i = 0; i < caught.length && result == NONE; i++) {
+      result = caught[i];
+    }
+    return result;
+  }
+
+  /**
+   * Stops the workers. The stepper can no longer be used.
+   */
+  public void shutdown() {
+    synchronized (lock) {
+      shutdown = true;
+      lock.notifyAll();
+    }
+  }
+
+  private void work(int range) {
+    long seen = 0;
+    while (true) {
+      synchronized (lock) {
+        while (!shutdown && generation == seen) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            // Check again.
+          }
+        }
+        if (shutdown) {
+          return;
+        }
+        seen = generation;
+      }
+
+      stepRange(range);
+
+      synchronized (lock) {
+        if (--pending == 0) {
+          lock.notifyAll();
+        }
+      }
+    }
+  }
+
+  /**
+   * Steps one range of the store and records the first Carey in it that
+   * caught Winnie.
+   */
+  private void stepRange(int range) {
+    int size = careys.size();
+    int ranges = caught.length;
+    int start = (int) ((long) size * range / ranges);
+    int end = (int) ((long) size * (range + 1) / ranges);
+
+    int first = NONE;
+    for (int i = start; i < end; i++) {
+      Carey.step(careys, i, canvasWidth, canvasHeight);
+      if (first == NONE && winnie != null && Carey.sweep(careys, i, winnie) >= 0) {
+        first = i;
+      }
+    }
+    caught[range] = first;
+  }
+}
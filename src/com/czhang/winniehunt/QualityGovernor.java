@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Picks a drawing quality {@link Level} from how much of their budget recent
+ * frames and ticks took. Samples are judged in windows, one per
+ * {@link Source}, so a busy source is not hidden by a light one recording
+ * more often. A window where more than a tenth of the samples came close to
+ * their budget lowers the quality a step. Several windows in a row with
+ * plenty of headroom, for every source, raise it a step. After a change,
+ * the samples so far are dropped and the next window of each source is
+ * ignored, giving the change time to take effect.
+ *
+ * <p>Written by the simulation and render threads, so all methods are
+ * synchronized. Recording a sample never allocates.
+ *
+ * @author czhang
+ */
+public class QualityGovernor {
+  /**
+   * Quality levels, from best to cheapest. Each one gives up a little more
+   * than the one before.
+   */
+  public enum Level {
+    HIGH(true, 0),
+    /** Sprites drawn without anti-aliasing or bitmap filtering. */
+    MEDIUM(false, 0),
+    /** Also at most 30 frames per second, so frames come evenly. */
+    LOW(false, 30);
+
+    private final boolean antiAliased;
+    private final int maxFramesPerSecond;
+
+    private Level(boolean antiAliased, int maxFramesPerSecond) {
+      this.antiAliased = antiAliased;
+      this.maxFramesPerSecond = maxFramesPerSecond;
+    }
+
+    public boolean isAntiAliased() {
+      return antiAliased;
+    }
+
+    /** Returns the most frames drawn per second, or 0 for no limit. */
+    public int getMaxFramesPerSecond() {
+      return maxFramesPerSecond;
+    }
+  }
+
+  /** What a sample was timed from. */
+  public enum Source {
+    /** A tick of the simulation. */
+    TICK,
+    /** A frame drawn by the render thread. */
+    FRAME
+  }
+
+  private static final Level[] LEVELS = Level.values();
+  private static final int SOURCES = Source.values().length;
+
+  /** Samples per window. */
+  public static final int WINDOW = 60;
+
+  /** A sample taking more than this fraction of its budget is over. */
+  private static final float OVER_LOAD = 0.9f;
+
+  /** A sample taking less than this fraction of its budget has headroom. */
+  private static final float HEADROOM_LOAD = 0.5f;
+
+  /** Samples per window that may be over before the quality is lowered. */
+  private static final int MAX_OVER = WINDOW / 10;
+
+  /** Samples per window that may lack headroom for the window to count toward raising. */
+  private static final int MAX_WITHOUT_HEADROOM = WINDOW / 20;
+
+  /** Windows in a row with headroom needed to raise the quality. */
+  public static final int RAISE_WINDOWS = 4;
+
+  private Level level = Level.HIGH;
+
+  /** Counts in the current window of each source, by ordinal. */
+  private final int[] samples = new int[SOURCES];
+  private final int[] over = new int[SOURCES];
+  private final int[] withoutHeadroom = new int[SOURCES];
+
+  /** Windows in a row with headroom, for each source. */
+  private final int[] headroomWindows = new int[SOURCES];
+
+  /** If the next window of each source is ignored because the level just changed. */
+  private final boolean[] settling = new boolean[SOURCES];
+
+  /**
+   * Records one frame or tick.
+   *
+   * @param source what was timed
+   * @param busyNanos time spent working on it
+   * @param budgetNanos time it had, e.g. a frame at the target frame rate
+   */
+  public synchronized void record(Source source, long busyNanos, long budgetNanos) {
+    int s = source.ordinal();
+    float load = (float) busyNanos / budgetNanos;
+    if (load > OVER_LOAD) {
+      over[s]++;
+    }
+    if (load >= HEADROOM_LOAD) {
+      withoutHeadroom[s]++;
+    }
+    if (++samples[s] < WINDOW) {
+      return;
+    }
+
+    if (settling[s]) {
+      settling[s] = false;
+    } else if (over[s] > MAX_OVER) {
+      headroomWindows[s] = 0;
+      if (level.ordinal() < LEVELS.length - 1) {
+        setLevel(LEVELS[level.ordinal() + 1]);
+      }
+    } else if (withoutHeadroom[s] <= MAX_WITHOUT_HEADROOM) {
+      headroomWindows[s]++;
+      if (level.ordinal() > 0 && allHaveHeadroom()) {
+        setLevel(LEVELS[level.ordinal() - 1]);
+      }
+    } else {
+      headroomWindows[s] = 0;
+    }
+    samples[s] = 0;
+    over[s] = 0;
+    withoutHeadroom[s] = 0;
+  }
+
+  private boolean allHaveHeadroom() {
+    for (int s = 0; s < SOURCES; s++) {
+      if (headroomWindows[s] < RAISE_WINDOWS) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void setLevel(Level level) {
+    this.level = level;
+    for (int s = 0; s < SOURCES; s++) {
+      samples[s] = 0;
+      over[s] = 0;
+      withoutHeadroom[s] = 0;
+      headroomWindows[s] = 0;
+      settling[s] = true;
+    }
+  }
+
+  public synchronized Level getLevel() {
+    return level;
+  }
+
+  /**
+   * Goes back to the best quality and forgets the samples so far.
+   */
+  public synchronized void reset() {
+    level = Level.HIGH;
+    for (int s = 0; s < SOURCES; s++) {
+      samples[s] = 0;
+      over[s] = 0;
+      withoutHeadroom[s] = 0;
+      headroomWindows[s] = 0;
+      settling[s] = false;
+    }
+  }
+}
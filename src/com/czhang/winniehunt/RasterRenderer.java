@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Arrays;
+
+/**
+ * Renderer drawing into an int array of ARGB pixels, with no Android
+ * dependencies, so frames can be timed and compared against golden images
+ * on any JVM. Output is exactly the same on every machine.
+ *
+ * <p>Sprites are blended over the frame without filtering. Text is drawn
+ * as a solid box per character, enough to place and time it but not to
+ * read it.
+ *
+ * @author czhang
+ */
+public class RasterRenderer implements Renderer {
+  private final int width, height;
+
+  /** Pixels of the frame, row by row. */
+  private final int[] pixels;
+
+  /** ARGB pixels of each sprite, size x size, row by row. */
+  private final int[][] sprites;
+  private final int spriteSize;
+
+  /**
+   * @param sprites ARGB pixels of each sprite, which must all be
+   *     spriteSize x spriteSize
+   */
+  public RasterRenderer(int width, int height, int[][] sprites, int spriteSize) {
+    this.width = width;
+    this.height = height;
+    this.sprites = sprites;
+    this.spriteSize = spriteSize;
+    pixels = new int[width * height];
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the pixels of the frame, row by row. Not a copy.
+   */
+  public int[] getPixels() {
+    return pixels;
+  }
+
+  @Override
+  public void clear(int color) {
+    Arrays.fill(pixels, color);
+  }
+
+  @Override
+  public void drawSprite(int sprite, int x, int y) {
+    int[] source = sprites[sprite];
+    int left = Math.max(x, 0);
+    int top = Math.max(y, 0);
+    int right = Math.min(x + spriteSize, width);
+    int bottom = Math.min(y + spriteSize, height);
+    for (int row = top; row < bottom; row++) {
+      int from = (row - y) * spriteSize - x;
+      int to = row * width;
+      for (int column = left; column < right; column++) {
+        int color = source[from + column];
+        int alpha = color >>> 24;
+        if (alpha == 0xff) {
+          pixels[to + column] = color;
+        } else if (alpha != 0) {
+          pixels[to + column] = blend(color, alpha, pixels[to + column]);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void drawText(TextBlock text, int x, int y) {
+    int size = text.getTextSize();
+    int advance = size * 3 / 5;
+    int glyphWidth = advance - Math.max(1, size / 10);
+    int glyphHeight = size * 7 / 10;
+    for (int i = 0; i < text.getLineCount(); i++) {
+      int length = text.getLineLength(i);
+      int left = text.getAlign() == TextBlock.ALIGN_CENTER ? x - length * advance / 2 : x;
+      int baseline = y + i * text.getLineHeight();
+      char[] line = text.getLine(i);
+      for (int c = 0; c < length; c++) {
+        if (!Character.isWhitespace(line[c])) {
+          int glyphLeft = left + c * advance;
+          fill(glyphLeft, baseline - glyphHeight, glyphLeft + glyphWidth, baseline,
+              text.getColor());
+        }
+      }
+    }
+  }
+
+  @Override
+  public void present() {
+    // Pixels are written as they are drawn.
+  }
+
+  private void fill(int left, int top, int right, int bottom, int color) {
+    left = Math.max(left, 0);
+    top = Math.max(top, 0);
+    right = Math.min(right, width);
+    bottom = Math.min(bottom, height);
+    for (int row = top; row < bottom; row++) {
+      Arrays.fill(pixels, row * width + left, Math.max(row * width + left, row * width + right),
+          color);
+    }
+  }
+
+  /**
+   * Blends {@code color} with the given alpha over the opaque color
+   * {@code under}.
+   */
+  private static int blend(int color, int alpha, int under) {
+    int inverse = 0xff - alpha;
+    int red = (((color >> 16) & 0xff) * alpha + ((under >> 16) & 0xff) * inverse) / 0xff;
+    int green = (((color >> 8) & 0xff) * alpha + ((under >> 8) & 0xff) * inverse) / 0xff;
+    int blue = ((color & 0xff) * alpha + (under & 0xff) * inverse) / 0xff;
+    return 0xff000000 | (red << 16) | (green << 8) | blue;
+  }
+}
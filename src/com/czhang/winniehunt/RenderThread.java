@@ -0,0 +1,540 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.SurfaceHolder;
+
+/**
+ * Thread drawing the {@link WorldSnapshot}s published by the
+ * {@link ControllerThread}, so drawing runs on a different core than the
+ * simulation and neither waits for the other.
+ *
+ * @author czhang
+ */
+public class RenderThread extends Thread {
+  private static final long NANOS_PER_MILLI = 1000000L;
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  /** Time a frame may take at the default frame rate. */
+  private static final long FRAME_BUDGET_NANOS =
+      NANOS_PER_SECOND / FrameClock.DEFAULT_FRAMES_PER_SECOND;
+
+  /**
+   * Fraction of the screen beyond which a dirty region is not worth it and
+   * the whole screen is redrawn instead.
+   */
+  private static final float MAX_DIRTY_FRACTION = 0.5f;
+
+  /** Handle to the surface manager object we interact with */
+  private final SurfaceHolder surfaceHolder;
+
+  /** Snapshots to draw. */
+  private final SnapshotExchange snapshots;
+
+  /** Where the phases of each frame are timed. */
+  private final FrameStats stats;
+
+  /** Paces frames. Only the frame rate is used, ticks belong to the simulation. */
+  private final FrameClock clock = new FrameClock();
+
+  /** Picks the quality frames are drawn at from how long they take. */
+  private final QualityGovernor quality;
+
+  /** Quality level applied to the drawing. */
+  private QualityGovernor.Level qualityLevel = QualityGovernor.Level.HIGH;
+
+  /** If the thread should keep running. Guarded by {@link #parkLock}. */
+  private boolean running;
+
+  /**
+   * Lock the thread parks on when there is nothing to draw. Also guards the
+   * fields describing whether the surface can be drawn to, and the settings.
+   */
+  private final Object parkLock = new Object();
+
+  /** If the thread is parked, or about to be, and must be notified of new snapshots. */
+  private volatile boolean parked;
+
+  /** If the surface exists and can be drawn to. */
+  private boolean surfaceReady;
+
+  /** If the thread is between locking and posting a canvas. */
+  private boolean drawingSurface;
+
+  /** If the last snapshot acquired has been drawn, so a paused game can park until woken. */
+  private boolean snapshotDrawn;
+
+  /** If the HUD is drawn. Guarded by {@link #parkLock}. */
+  private boolean hudVisible;
+
+  /** If the frame being drawn shows the HUD. */
+  private boolean frameHud;
+
+  /** Start of the last frame, or -1 if the thread has parked since. */
+  private long lastFrameStart = -1;
+
+  private final Resources resources;
+
+  /** Draws the frames, with the overlay messages looked up once so drawing does not allocate. */
+  private final FrameDrawer frameDrawer;
+
+  /** Draws onto the canvas of the surface. */
+  private final CanvasRenderer canvasRenderer;
+
+  /** Decodes the images of the shapes in the background. */
+  private final SpriteLoader loader;
+
+  /** Which images have been copied from {@link #loader} into the atlas, and how many. */
+  private final boolean[] installed = new boolean[SpriteLoader.SPRITE_COUNT];
+  private int installedCount;
+
+  /** If only the part of the screen that changed is redrawn each frame. */
+  private boolean dirtyRendering;
+
+  /** If the next frame must redraw the whole screen, e.g. because the state changed. */
+  private boolean fullRedraw = true;
+
+  /** Sprites of the frame being drawn. */
+  private final DrawList drawList = new DrawList();
+
+  /** Bounds of the moving shapes in the frame before. */
+  private final DirtyRegion lastFrameBounds = new DirtyRegion();
+
+  /** Area to redraw for the frame being drawn. */
+  private final DirtyRegion dirty = new DirtyRegion();
+
+  /** Region passed to lockCanvas(). */
+  private final Rect dirtyRect = new Rect();
+
+  /** Treats as of the last frame drawn, to find the ones that were eaten or added. */
+  private final EntityStore drawnTreats = new EntityStore(Treat.SIZE_DP);
+
+  /** State and canvas size of the last frame drawn. */
+  private GameWorld.State drawnState;
+  private int drawnWidth, drawnHeight;
+
+  /**
+   * Atlas holding the images of all the shapes, indexed as in
+   * {@link SpriteLoader}. Images not loaded yet show a placeholder.
+   */
+  private final SpriteAtlas atlas;
+
+  public RenderThread(SurfaceHolder surfaceHolder, Context context, SnapshotExchange snapshots,
+      FrameStats stats, QualityGovernor quality) {
+    this.surfaceHolder = surfaceHolder;
+    this.snapshots = snapshots;
+    this.stats = stats;
+    this.quality = quality;
+
+    // Look up overlay messages.
+    resources = context.getResources();
+    frameDrawer = new FrameDrawer(resources.getString(R.string.message_ready),
+        resources.getString(R.string.message_done1),
+        resources.getString(R.string.message_done2),
+        resources.getString(R.string.message_paused));
+
+    // Images are packed into one atlas as they are decoded. Nothing is
+    // decoded here, as the view creating this thread is being inflated on
+    // the UI thread.
+    loader = SpriteLoader.get(context);
+    atlas = new SpriteAtlas(SpriteLoader.SPRITE_COUNT, SpriteLoader.SPRITE_SIZE);
+    canvasRenderer = new CanvasRenderer(atlas);
+    installSprites();
+    updateLoadingMessage();
+  }
+
+  /**
+   * Copies the images decoded since the last call into the atlas. Called
+   * between frames, as the atlas must not change while being drawn from.
+   */
+  private void installSprites() {
+    if (installedCount == SpriteLoader.SPRITE_COUNT) {
+      return;
+    }
+    int before = installedCount;
+    for (int i = 0; i < SpriteLoader.SPRITE_COUNT; i++) {
+      if (!installed[i]) {
+        Bitmap image = loader.poll(i);
+        if (image != null) {
+          atlas.setSprite(i, image);
+          installed[i] = true;
+          installedCount++;
+        }
+      }
+    }
+    if (installedCount != before) {
+      updateLoadingMessage();
+      // Placeholders and the progress may be anywhere on screen.
+      synchronized (parkLock) {
+        fullRedraw = true;
+      }
+    }
+  }
+
+  private void updateLoadingMessage() {
+    if (installedCount == SpriteLoader.SPRITE_COUNT) {
+      frameDrawer.setLoadingMessage(null);
+    } else {
+      frameDrawer.setLoadingMessage(resources.getString(R.string.message_loading,
+          installedCount * 100 / SpriteLoader.SPRITE_COUNT));
+    }
+  }
+
+  /**
+   * Asks the loader to decode the images on screen that are not in the
+   * atlas yet ahead of the others.
+   */
+  private void requestMissingSprites() {
+    if (installedCount == SpriteLoader.SPRITE_COUNT) {
+      return;
+    }
+    for (int i = 0; i < drawList.size(); i++) {
+      int sprite = drawList.getSprite(i);
+      if (!installed[sprite]) {
+        loader.request(sprite);
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    while (awaitFrame()) {
+      long frameStart = System.nanoTime();
+      if (lastFrameStart >= 0) {
+        stats.record(FrameStats.Phase.FRAME, frameStart - lastFrameStart);
+      }
+      lastFrameStart = frameStart;
+
+      WorldSnapshot snapshot = snapshots.acquire();
+      float alpha = snapshot.alphaAt(frameStart);
+      Rect dirty = prepareFrame(snapshot, alpha);
+      long time = System.nanoTime();
+      long prepareNanos = time - frameStart;
+      stats.record(FrameStats.Phase.PREPARE, prepareNanos);
+
+      Canvas canvas = null;
+      try {
+        canvas = surfaceHolder.lockCanvas(dirty);
+        time = record(FrameStats.Phase.LOCK, time);
+        long drawStart = time;
+        doDraw(canvas, snapshot);
+        time = record(FrameStats.Phase.DRAW, time);
+        // Locking and posting wait for the display as much as they work,
+        // so only preparing and drawing count against the budget.
+        if (canvas != null) {
+          quality.record(QualityGovernor.Source.FRAME, prepareNanos + time - drawStart,
+              FRAME_BUDGET_NANOS);
+        }
+      } finally {
+        // Do this in a finally so that if an exception is thrown
+        // during the above, we don't leave the Surface in an
+        // inconsistent state.
+        if (canvas != null) {
+          surfaceHolder.unlockCanvasAndPost(canvas);
+          record(FrameStats.Phase.POST, time);
+        }
+        finishFrame(canvas != null);
+      }
+
+      // Give up the CPU if we are ahead of the frame rate.
+      waitForNextFrame();
+    }
+    // Only this thread draws from the atlas.
+    atlas.recycle();
+  }
+
+  /**
+   * Records the time since {@code start} for the phase and returns the time
+   * now, the start of the next phase.
+   */
+  private long record(FrameStats.Phase phase, long start) {
+    long now = System.nanoTime();
+    stats.record(phase, now - start);
+    return now;
+  }
+
+  /**
+   * Blocks while there is nothing to draw: the surface does not exist, or the
+   * game is paused and the last snapshot has already been drawn. Returns
+   * false when the thread should exit.
+   */
+  private boolean awaitFrame() {
+    synchronized (parkLock) {
+      boolean waited = false;
+      while (running) {
+        // Set before checking for a new snapshot, so that a snapshot
+        // published after the check always notifies us.
+        parked = true;
+        if (surfaceReady && !(snapshotDrawn && drawnState == GameWorld.State.PAUSE
+            && !snapshots.hasFresh())) {
+          break;
+        }
+        waited = true;
+        try {
+          parkLock.wait();
+        } catch (InterruptedException e) {
+          // Check the conditions again.
+        }
+      }
+      parked = false;
+      if (!running) {
+        return false;
+      }
+      if (waited) {
+        // Don't try to catch up on the time spent parked, or count it as
+        // a frame.
+        clock.reset();
+        fullRedraw = true;
+        lastFrameStart = -1;
+      }
+      clock.advance(System.nanoTime());
+      drawingSurface = true;
+      return true;
+    }
+  }
+
+  /**
+   * Marks the surface as no longer in use by this thread.
+   */
+  private void finishFrame(boolean drawn) {
+    synchronized (parkLock) {
+      drawingSurface = false;
+      snapshotDrawn = drawn;
+      parkLock.notifyAll();
+    }
+  }
+
+  /**
+   * Builds the draw list for the snapshot and works out which part of the
+   * screen has to be redrawn to show it. Returns null if the whole screen
+   * should be redrawn.
+   */
+  private Rect prepareFrame(WorldSnapshot snapshot, float alpha) {
+    int canvasWidth = snapshot.getCanvasWidth();
+    int canvasHeight = snapshot.getCanvasHeight();
+    GameWorld.State state = snapshot.getState();
+    if (canvasWidth != drawnWidth || canvasHeight != drawnHeight) {
+      // Drop the text rasterized for the old surface, e.g. before a rotation.
+      canvasRenderer.recycleText();
+    }
+    if (state != drawnState || canvasWidth != drawnWidth || canvasHeight != drawnHeight) {
+      fullRedraw = true;
+      drawnState = state;
+      drawnWidth = canvasWidth;
+      drawnHeight = canvasHeight;
+    }
+
+    // Treats that were eaten or added since the last frame.
+    dirty.clear();
+    EntityStore treats = snapshot.getTreats();
+    unionMissing(drawnTreats, treats, dirty);
+    unionMissing(treats, drawnTreats, dirty);
+    drawnTreats.copyFrom(treats);
+
+    // Find where everything that moves is drawn.
+    applyQuality();
+    installSprites();
+    drawList.build(snapshot, alpha, SpriteLoader.WINNIE_BASE, SpriteLoader.CAREY_BASE,
+        SpriteLoader.TREAT_BASE);
+    requestMissingSprites();
+    DirtyRegion frameBounds = drawList.getMovingBounds();
+
+    // Shapes have to be erased where they were and drawn where they are.
+    dirty.union(frameBounds);
+    dirty.union(lastFrameBounds);
+    lastFrameBounds.set(frameBounds);
+
+    boolean full;
+    synchronized (parkLock) {
+      frameHud = hudVisible;
+      if (frameHud) {
+        dirty.union(0, 0, canvasWidth, FrameDrawer.HUD_HEIGHT);
+      }
+      dirty.clip(canvasWidth, canvasHeight);
+      full = !dirtyRendering || fullRedraw
+          || dirty.area() > MAX_DIRTY_FRACTION * canvasWidth * canvasHeight;
+      fullRedraw = false;
+    }
+    if (full) {
+      return null;
+    }
+    dirtyRect.set(dirty.getLeft(), dirty.getTop(), dirty.getRight(), dirty.getBottom());
+    return dirtyRect;
+  }
+
+  /**
+   * Switches the drawing to the quality level picked by the governor, if it
+   * changed.
+   */
+  private void applyQuality() {
+    QualityGovernor.Level level = quality.getLevel();
+    if (level == qualityLevel) {
+      return;
+    }
+    qualityLevel = level;
+    canvasRenderer.setAntiAlias(level.isAntiAliased());
+    frameDrawer.setQualityLevel(level);
+    synchronized (parkLock) {
+      updateFrameRate();
+      fullRedraw = true;
+    }
+  }
+
+  /**
+   * Sets the clock to the default frame rate, limited by the quality level.
+   * Called with {@link #parkLock} held.
+   */
+  private void updateFrameRate() {
+    int max = qualityLevel.getMaxFramesPerSecond();
+    clock.setFramesPerSecond(max > 0 ? Math.min(max, FrameClock.DEFAULT_FRAMES_PER_SECOND)
+        : FrameClock.DEFAULT_FRAMES_PER_SECOND);
+  }
+
+  /**
+   * Adds to {@code region} the bounds of the entities in {@code from} that
+   * have no entity at the same position in {@code to}. Stores are small.
+   */
+  private static void unionMissing(EntityStore from, EntityStore to, DirtyRegion region) {
+    int size = from.getEntitySize();
+    for (int i = 0; i < from.size(); i++) {
+      int left = from.getLeft(i);
+      int top = from.getTop(i);
+      boolean found = false;
+      for (int j = 0; j < to.size() && !found; j++) {
+        found = to.getLeft(j) == left && to.getTop(j) == top
+            && to.getSprite(j) == from.getSprite(i);
+      }
+      if (!found) {
+        region.union(left, top, left + size, top + size);
+      }
+    }
+  }
+
+  /**
+   * Sleeps until the next frame is due, or yields if it is due in less than
+   * a millisecond.
+   */
+  private void waitForNextFrame() {
+    long wait;
+    synchronized (parkLock) {
+      wait = clock.nanosUntilNextFrame(System.nanoTime());
+    }
+    if (wait >= NANOS_PER_MILLI) {
+      try {
+        Thread.sleep(wait / NANOS_PER_MILLI, (int) (wait % NANOS_PER_MILLI));
+      } catch (InterruptedException e) {
+        // Fall through and draw the next frame early.
+      }
+    } else if (wait > 0) {
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Draws the snapshot using the specified canvas, from the draw list built
+   * by prepareFrame().
+   * @param canvas
+   */
+  private void doDraw(Canvas canvas, WorldSnapshot snapshot) {
+    if (canvas == null) {
+      // Nothing was drawn, so the next frame cannot rely on this one.
+      synchronized (parkLock) {
+        fullRedraw = true;
+      }
+      return;
+    }
+
+    canvasRenderer.begin(canvas);
+    frameDrawer.draw(canvasRenderer, snapshot, drawList, frameHud ? stats : null,
+        System.nanoTime());
+    canvasRenderer.present();
+  }
+
+  /**
+   * Called by the simulation after publishing a snapshot. Only takes the
+   * lock if the thread is parked waiting for one.
+   */
+  public void onSnapshotPublished() {
+    if (parked) {
+      synchronized (parkLock) {
+        parkLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Wakes the thread if it is parked, so it draws at least one more frame,
+   * e.g. because the window got focus back.
+   */
+  public void wake() {
+    synchronized (parkLock) {
+      snapshotDrawn = false;
+      parkLock.notifyAll();
+    }
+  }
+
+  /**
+   * Sets if the surface can be drawn to. When set to false, blocks until the
+   * thread has finished with the surface, as the surface must not be touched
+   * after SurfaceHolder.Callback.surfaceDestroyed() returns.
+   */
+  public void setSurfaceReady(boolean surfaceReady) {
+    synchronized (parkLock) {
+      this.surfaceReady = surfaceReady;
+      snapshotDrawn = false;
+      parkLock.notifyAll();
+      while (!surfaceReady && drawingSurface) {
+        try {
+          parkLock.wait();
+        } catch (InterruptedException e) {
+          // Keep waiting, the surface is about to go away.
+        }
+      }
+    }
+  }
+
+  public void setRunning(boolean running) {
+    synchronized (parkLock) {
+      this.running = running;
+      parkLock.notifyAll();
+    }
+  }
+
+  public void setHudVisible(boolean hudVisible) {
+    synchronized (parkLock) {
+      this.hudVisible = hudVisible;
+      fullRedraw = true;
+      snapshotDrawn = false;
+      parkLock.notifyAll();
+    }
+  }
+
+  public boolean isHudVisible() {
+    synchronized (parkLock) {
+      return hudVisible;
+    }
+  }
+
+  /**
+   * Sets if only the part of the screen that changed is redrawn each frame.
+   * Falls back to redrawing everything when most of the screen changed.
+   */
+  public void setDirtyRendering(boolean dirtyRendering) {
+    synchronized (parkLock) {
+      this.dirtyRendering = dirtyRendering;
+      fullRedraw = true;
+    }
+  }
+
+  public boolean isDirtyRendering() {
+    synchronized (parkLock) {
+      return dirtyRendering;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Draws frames. Implemented on an Android Canvas for the game, and on a
+ * plain int array so frames can be drawn, timed and compared off device.
+ *
+ * <p>A frame is drawn with any number of the draw calls, then
+ * {@link #present()}.
+ *
+ * @author czhang
+ */
+public interface Renderer {
+  /**
+   * Fills the frame with an ARGB color.
+   */
+  void clear(int color);
+
+  /**
+   * Draws the sprite with its top left at x,y. Sprites are indexed as in
+   * {@link SpriteLoader}.
+   */
+  void drawSprite(int sprite, int x, int y);
+
+  /**
+   * Draws the lines of {@code text} with the baseline of the first at y.
+   * x is the left or the center of the lines, depending on their alignment.
+   */
+  void drawText(TextBlock text, int x, int y);
+
+  /**
+   * Finishes the frame.
+   */
+  void present();
+}
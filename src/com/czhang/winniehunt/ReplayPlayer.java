@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Plays back a recording made by {@link ReplayRecorder} on a new
+ * {@link GameWorld}, one tick at a time and as fast as the caller likes.
+ *
+ * @author czhang
+ */
+public class ReplayPlayer {
+  private final InputStream in;
+  private final GameWorld world;
+  private final long seed;
+
+  /** Ticks of the current run still to be stepped. */
+  private int pendingTicks;
+
+  /** Ticks stepped so far. */
+  private long ticks;
+
+  /** First tick at which the world did not match the recording, or -1. */
+  private long divergedAt = -1;
+
+  /** Previous touch, touches are stored relative to it. */
+  private int lastX, lastY;
+  private long lastTimeMs;
+
+  /**
+   * Reads the header of the recording and creates the world to play it on,
+   * with the numbers of images it was recorded with. The stream should be
+   * buffered.
+   */
+  public ReplayPlayer(InputStream in) throws IOException {
+    this.in = in;
+    if (readInt() != ReplayRecorder.MAGIC) {
+      throw new IOException("Not a replay");
+    }
+    int version = (int) readVarint();
+    if (version != ReplayRecorder.VERSION) {
+      throw new IOException("Unsupported replay version " + version);
+    }
+    seed = readLong();
+    int numWinnieSprites = readSpriteCount();
+    int numCareySprites = readSpriteCount();
+    int numTreatSprites = readSpriteCount();
+    world = new GameWorld(seed, numWinnieSprites, numCareySprites, numTreatSprites);
+  }
+
+  public GameWorld getWorld() {
+    return world;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * Returns the first tick at which the world did not match the recording,
+   * or -1 if it always did.
+   */
+  public long getDivergedAt() {
+    return divergedAt;
+  }
+
+  /**
+   * Applies the input recorded before the next tick and steps the world.
+   * Returns false, without stepping, at the end of the recording.
+   */
+  public boolean step() throws IOException {
+    while (pendingTicks == 0) {
+      int tag = readTag();
+      if (tag < 0) {
+        return false;
+      }
+      apply(tag);
+    }
+    pendingTicks--;
+    world.step();
+    ticks++;
+    return true;
+  }
+
+  private void apply(int tag) throws IOException {
+    switch (tag) {
+      case ReplayRecorder.TAG_TICKS:
+        pendingTicks = (int) readVarint();
+        break;
+      case ReplayRecorder.TAG_TOUCH:
+        int action = (int) readVarint();
+        lastX += (int) unzigzag(readVarint());
+        lastY += (int) unzigzag(readVarint());
+        lastTimeMs += unzigzag(readVarint());
+        world.touch(action, lastX, lastY, lastTimeMs);
+        break;
+      case ReplayRecorder.TAG_SIZE:
+        int width = (int) readVarint();
+        int height = (int) readVarint();
+        world.setSize(width, height);
+        break;
+      case ReplayRecorder.TAG_LAYOUT:
+        world.setupLayout();
+        break;
+      case ReplayRecorder.TAG_START:
+        world.setState(GameWorld.State.READY);
+        break;
+      case ReplayRecorder.TAG_PAUSE:
+        world.pause();
+        break;
+      case ReplayRecorder.TAG_CHECKSUM:
+        long checksum = readLong();
+        if (divergedAt < 0 && checksum != world.checksum()) {
+          divergedAt = ticks;
+        }
+        break;
+      default:
+        throw new IOException("Unknown replay event " + tag + " after tick " + ticks);
+    }
+  }
+
+  /**
+   * Reads a tag, or returns -1 at the end of the stream.
+   */
+  private int readTag() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      return -1;
+    }
+    return (int) readVarint(b);
+  }
+
+  private int readSpriteCount() throws IOException {
+    long count = readVarint();
+    if (count < 1 || count > Integer.MAX_VALUE) {
+      throw new IOException("Invalid sprite count " + count);
+    }
+    return (int) count;
+  }
+
+  private long readVarint() throws IOException {
+    return readVarint(readByte());
+  }
+
+  private long readVarint(int first) throws IOException {
+    long value = first & 0x7F;
+    int shift = 7;
+    int b = first;
+    while ((b & 0x80) != 0) {
+      b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    }
+    return value;
+  }
+
+  private int readByte() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      throw new EOFException("Truncated replay after tick " + ticks);
+    }
+    return b;
+  }
+
+  private int readInt() throws IOException {
+    return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+  }
+
+  private long readLong() throws IOException {
+    return (long) readInt() << 32 | (readInt() & 0xFFFFFFFFL);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
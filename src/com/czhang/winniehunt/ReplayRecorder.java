@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records everything fed into a {@link GameWorld}, so the game can be played
+ * back exactly by a {@link ReplayPlayer}, e.g. headlessly to reproduce a
+ * slow frame from a session on a phone.
+ *
+ * <p>The format is a header (magic, version, seed, sprite counts) followed by
+ * events, each a tag and its arguments. Numbers are varints, and touches
+ * are stored as zigzag encoded deltas from the previous touch, so a touch
+ * typically takes a few bytes. Runs of ticks without input are stored as a
+ * count, and every {@link #CHECKSUM_INTERVAL} ticks a checksum of the world
+ * lets the player detect divergence.
+ *
+ * <p>Recording stops at the first write error instead of throwing, so it
+ * can be called from the game loop; see {@link #getError()}.
+ *
+ * @author czhang
+ */
+public class ReplayRecorder {
+  static final int MAGIC = 0x57485250; // "WHRP"
+  /** Bumped whenever gameplay changes, as old replays would not play back. */
+  static final int VERSION = 3;
+
+  /** Event tags. */
+  static final int TAG_TICKS = 0;
+  static final int TAG_TOUCH = 1;
+  static final int TAG_SIZE = 2;
+  static final int TAG_LAYOUT = 3;
+  static final int TAG_START = 4;
+  static final int TAG_PAUSE = 5;
+  static final int TAG_CHECKSUM = 6;
+
+  /** Number of ticks between checksums. */
+  static final int CHECKSUM_INTERVAL = 60;
+
+  private final OutputStream out;
+
+  /** Ticks stepped since the last event was written. */
+  private int pendingTicks;
+
+  /** Ticks recorded in total. */
+  private long ticks;
+
+  /** Previous touch, touches are stored relative to it. */
+  private int lastX, lastY;
+  private long lastTimeMs;
+
+  /** First write error, after which nothing more is recorded. */
+  private IOException error;
+
+  /**
+   * Starts a recording of {@code world}, before it receives any input. The
+   * stream should be buffered.
+   */
+  public ReplayRecorder(OutputStream out, GameWorld world) {
+    this.out = out;
+    try {
+      writeInt(MAGIC);
+      writeVarint(VERSION);
+      writeLong(world.getSeed());
+      // The number of images bounds the random picks, so the world must be
+      // played back with the same numbers.
+      writeVarint(world.getNumWinnieSprites());
+      writeVarint(world.getNumCareySprites());
+      writeVarint(world.getNumTreatSprites());
+    } catch (IOException e) {
+      error = e;
+    }
+  }
+
+  public IOException getError() {
+    return error;
+  }
+
+  public void size(int width, int height) {
+    try {
+      writeTag(TAG_SIZE);
+      writeVarint(width);
+      writeVarint(height);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /** The world was laid out, see {@link GameWorld#setupLayout()}. */
+  public void layout() {
+    event(TAG_LAYOUT);
+  }
+
+  /** The world was put in the READY state. */
+  public void start() {
+    event(TAG_START);
+  }
+
+  public void pause() {
+    event(TAG_PAUSE);
+  }
+
+  public void touch(int action, int x, int y, long timeMs) {
+    try {
+      writeTag(TAG_TOUCH);
+      writeVarint(action);
+      writeVarint(zigzag(x - lastX));
+      writeVarint(zigzag(y - lastY));
+      writeVarint(zigzag(timeMs - lastTimeMs));
+      lastX = x;
+      lastY = y;
+      lastTimeMs = timeMs;
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Records that the world was stepped once, after stepping it.
+   */
+  public void tick(GameWorld world) {
+    if (error != null) {
+      return;
+    }
+    pendingTicks++;
+    ticks++;
+    if (ticks % CHECKSUM_INTERVAL == 0) {
+      try {
+        writeTag(TAG_CHECKSUM);
+        writeLong(world.checksum());
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+  }
+
+  /**
+   * Writes out everything recorded so far and closes the stream.
+   */
+  public void close() {
+    try {
+      flushTicks();
+      out.close();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void event(int tag) {
+    try {
+      writeTag(tag);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * Writes the ticks stepped since the last event, then the tag.
+   */
+  private void writeTag(int tag) throws IOException {
+    if (error != null) {
+      throw error;
+    }
+    flushTicks();
+    writeVarint(tag);
+  }
+
+  private void flushTicks() throws IOException {
+    if (pendingTicks > 0) {
+      writeVarint(TAG_TICKS);
+      writeVarint(pendingTicks);
+      pendingTicks = 0;
+    }
+  }
+
+  private void fail(IOException e) {
+    if (error == null) {
+      error = e;
+      try {
+        out.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private void writeVarint(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private void writeLong(long value) throws IOException {
+    writeInt((int) (value >>> 32));
+    writeInt((int) value);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Arrays;
+
+/**
+ * Mixes short sound effects, held decoded in memory, into a stream of 16
+ * bit mono samples. The game thread starts sounds with {@link #play(int)},
+ * which only queues the request and never blocks; the audio thread starts
+ * them at the next {@link #mix} call.
+ *
+ * <p>At most a fixed number of voices play at once. A sound that finds
+ * them all busy takes over the oldest voice of the lowest priority no
+ * higher than its own, or is dropped. A sound played several times before
+ * the next mix starts only once, so eating a dozen treats in one tick
+ * does not stack a dozen copies.
+ *
+ * @author czhang
+ */
+public class SfxMixer {
+  /** Capacity of the queue of sounds to start. */
+  private static final int QUEUE_CAPACITY = 64;
+
+  /** Samples of each sound. */
+  private final short[][] sounds;
+
+  /** Priority of each sound, higher wins. */
+  private final int[] priorities;
+
+  /** Sound played by each voice, or -1 if free. Only used by the audio thread. */
+  private final int[] voiceSounds;
+
+  /** Next sample each voice plays. */
+  private final int[] voicePositions;
+
+  /** When each voice started, in mix calls, to find the oldest. */
+  private final long[] voiceStarts;
+  private long mixCount;
+
+  /** Sounds started by the current mix call, so repeats are ignored. */
+  private final boolean[] startedNow;
+
+  /** Queue of sounds to start, from the game thread to the audio thread. */
+  private final int[] queue = new int[QUEUE_CAPACITY];
+
+  /** Number of sounds ever taken from the queue. Only written by the audio thread. */
+  private volatile long head;
+
+  /** Number of sounds ever queued. Only written by the game thread. */
+  private volatile long tail;
+
+  /**
+   * Sounds not played because the queue was full, and because no voice
+   * could be had. Each only written by one thread.
+   */
+  private volatile int droppedQueued, droppedVoices;
+
+  /**
+   * @param sounds samples of each sound, identified by index
+   * @param priorities priority of each sound, higher wins
+   * @param voices number of sounds that can play at once
+   */
+  public SfxMixer(short[][] sounds, int[] priorities, int voices) {
+    this.sounds = sounds;
+    this.priorities = priorities;
+    voiceSounds = new int[voices];
+    voicePositions = new int[voices];
+    voiceStarts = new long[voices];
+    startedNow = new boolean[sounds.length];
+    Arrays.fill(voiceSounds, -1);
+  }
+
+  /**
+   * Queues the sound to start at the next mix. Called by one thread only,
+   * e.g. the game thread. Returns false and drops the sound if the queue
+   * is full.
+   */
+  public boolean play(int sound) {
+    long t = tail;
+    if (t - head >= QUEUE_CAPACITY) {
+      droppedQueued++;
+      return false;
+    }
+    queue[(int) (t % QUEUE_CAPACITY)] = sound;
+    // Publishing the new tail makes the write above visible to the audio thread.
+    tail = t + 1;
+    return true;
+  }
+
+  /**
+   * Returns true if no sound is playing or queued, so the audio thread can
+   * stop until the next {@link #play(int)}. Called by the audio thread.
+   */
+  public boolean isIdle() {
+    if (head != tail) {
+      return false;
+    }
+    for (int sound : voiceSounds) {
+      if (sound >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of sounds not played because too many were played
+   * at once.
+   */
+  public int getDropped() {
+    return droppedQueued + droppedVoices;
+  }
+
+  /**
+   * Starts the queued sounds and writes the next {@code length} samples of
+   * the mix to {@code out}, silence where nothing plays. Called by the
+   * audio thread only.
+   */
+  public void mix(short[] out, int offset, int length) {
+    startQueued();
+
+    Arrays.fill(out, offset, offset + length, (short) 0);
+    for (int voice = 0; voice < voiceSounds.length; voice++) {
+      int sound = voiceSounds[voice];
+      if (sound < 0) {
+        continue;
+      }
+      short[] samples = sounds[sound];
+      int position = voicePositions[voice];
+      int n = Math.min(length, samples.length - position);
+      for (int i = 0; i < n; i++) {
+        int sum = out[offset + i] + samples[position + i];
+        out[offset + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum));
+      }
+      position += n;
+      if (position == samples.length) {
+        voiceSounds[voice] = -1;
+      } else {
+        voicePositions[voice] = position;
+      }
+    }
+  }
+
+  private void startQueued() {
+    mixCount++;
+    Arrays.fill(startedNow, false);
+    long h = head;
+    long t = tail;
+    for (long n = h; n < t; n++) {
+      int sound = queue[(int) (n % QUEUE_CAPACITY)];
+      if (!startedNow[sound]) {
+        startedNow[sound] = true;
+        start(sound);
+      }
+    }
+    // Publishing the new head lets the game thread reuse the slots.
+    head = t;
+  }
+
+  /**
+   * Starts the sound on a free voice, or takes over the oldest voice of the
+   * lowest priority no higher than the sound's.
+   */
+  private void start(int sound) {
+    int chosen = -1;
+    for (int voice = 0; voice < voiceSounds.length; voice++) {
+      int playing = voiceSounds[voice];
+      if (playing < 0) {
+        chosen = voice;
+        break;
+      }
+      if (priorities[playing] > priorities[sound]) {
+        continue;
+      }
+      if (chosen < 0 || priorities[playing] < priorities[voiceSounds[chosen]]
+          || (priorities[playing] == priorities[voiceSounds[chosen]]
+              && voiceStarts[voice] < voiceStarts[chosen])) {
+        chosen = voice;
+      }
+    }
+    if (chosen < 0) {
+      droppedVoices++;
+      return;
+    }
+    voiceSounds[chosen] = sound;
+    voicePositions[chosen] = 0;
+    voiceStarts[chosen] = mixCount;
+  }
+}
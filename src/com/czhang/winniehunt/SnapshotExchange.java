@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands {@link WorldSnapshot}s from the simulation thread to the render
+ * thread without locks, using three buffers: the producer fills the back
+ * buffer, the consumer draws the front buffer, and the newest complete
+ * snapshot waits in between. Neither side ever waits for the other; the
+ * consumer skips snapshots it was too slow to draw.
+ *
+ * @author czhang
+ */
+public class SnapshotExchange {
+  /** Set in {@link #middle} when it holds a snapshot the consumer has not seen. */
+  private static final int FRESH = 4;
+  private static final int INDEX_MASK = 3;
+
+  private final WorldSnapshot[] buffers = new WorldSnapshot[] {
+    new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot()
+  };
+
+  /** Buffer owned by the producer. */
+  private int back = 0;
+
+  /** Buffer owned by the consumer. */
+  private int front = 1;
+
+  /** Buffer in between, plus the FRESH flag. */
+  private final AtomicInteger middle = new AtomicInteger(2);
+
+  /**
+   * Returns the snapshot the producer should fill next. Producer only.
+   */
+  public WorldSnapshot getBack() {
+    return buffers[back];
+  }
+
+  /**
+   * Makes the filled back snapshot available to the consumer. Producer only.
+   */
+  public void publish() {
+    back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Returns true if a snapshot was published since the last acquire().
+   */
+  public boolean hasFresh() {
+    return (middle.get() & FRESH) != 0;
+  }
+
+  /**
+   * Returns the newest published snapshot, which stays valid until the next
+   * call. Consumer only.
+   */
+  public WorldSnapshot acquire() {
+    if (hasFresh()) {
+      front = middle.getAndSet(front) & INDEX_MASK;
+    }
+    return buffers[front];
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.concurrent.locks.LockSupport;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+
+/**
+ * Thread playing the sound effects of an {@link SfxMixer} through a
+ * streaming AudioTrack, in buffers shorter than a frame so sounds start
+ * within a frame of being played. Sleeps while nothing is playing.
+ *
+ * @author czhang
+ */
+public class SoundEffectPlayer extends Thread {
+  private static final int SAMPLE_RATE = 22050;
+
+  /** Samples mixed at a time, about 12 ms. */
+  private static final int BUFFER_SAMPLES = 256;
+
+  /** Number of sounds that can play at once. */
+  private static final int VOICES = 4;
+
+  private final SfxMixer mixer;
+  private final AudioTrack track;
+  private final short[] buffer = new short[BUFFER_SAMPLES];
+
+  private volatile boolean running = true;
+
+  public SoundEffectPlayer() {
+    super("SoundEffectPlayer");
+    mixer = new SfxMixer(SoundEffects.synthesize(SAMPLE_RATE), SoundEffects.PRIORITIES, VOICES);
+    int minBytes = AudioTrack.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO,
+        AudioFormat.ENCODING_PCM_16BIT);
+    track = new AudioTrack(AudioManager.STREAM_MUSIC, SAMPLE_RATE, AudioFormat.CHANNEL_OUT_MONO,
+        AudioFormat.ENCODING_PCM_16BIT, Math.max(minBytes, 2 * BUFFER_SAMPLES),
+        AudioTrack.MODE_STREAM);
+  }
+
+  /**
+   * Plays one of the {@link SoundEffects}. Never blocks. Called by one
+   * thread only, the {@link FeedbackDispatcher}.
+   */
+  public void play(int sound) {
+    if (mixer.play(sound)) {
+      LockSupport.unpark(this);
+    }
+  }
+
+  /**
+   * Returns the number of sounds not played because too many were played
+   * at once.
+   */
+  public int getDropped() {
+    return mixer.getDropped();
+  }
+
+  @Override
+  public void run() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    track.play();
+    while (running) {
+      if (mixer.isIdle()) {
+        // The track plays silence until more is written. play() unparks.
+        LockSupport.park(this);
+        continue;
+      }
+      mixer.mix(buffer, 0, BUFFER_SAMPLES);
+      // Blocks while the track's buffer is full, which paces the thread.
+      track.write(buffer, 0, BUFFER_SAMPLES);
+    }
+    track.stop();
+    track.release();
+  }
+
+  /**
+   * Stops the thread and waits for it to release the track.
+   */
+  public void quit() {
+    if (getState() == State.NEW) {
+      track.release();
+      return;
+    }
+    running = false;
+    LockSupport.unpark(this);
+    boolean retry = true;
+    while (retry && isAlive()) {
+      try {
+        join();
+        retry = false;
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+}
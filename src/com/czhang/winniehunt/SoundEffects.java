@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * The game's sound effects, synthesized as 16 bit mono samples when the
+ * game starts, so they are ready in memory and need no files.
+ *
+ * @author czhang
+ */
+public final class SoundEffects {
+  /** Sound identifiers, indexes into {@link #synthesize(int)}. */
+  public static final int EAT = 0;
+  public static final int CAUGHT = 1;
+  public static final int WAVE_CLEARED = 2;
+
+  /** Priority of each sound for {@link SfxMixer}: being caught beats everything. */
+  public static final int[] PRIORITIES = new int[] {0, 2, 1};
+
+  /** Time taken to fade in, so sounds don't click, in milliseconds. */
+  private static final int ATTACK_MS = 5;
+
+  private SoundEffects() {}
+
+  /**
+   * Returns the samples of every sound at the sample rate.
+   */
+  public static short[][] synthesize(int sampleRate) {
+    short[][] sounds = new short[3][];
+    // A quick rising chirp.
+    sounds[EAT] = sweep(sampleRate, 880, 1760, 80, 0.3);
+    // A long falling tone.
+    sounds[CAUGHT] = sweep(sampleRate, 440, 110, 450, 0.5);
+    // Three rising notes.
+    short[] c = sweep(sampleRate, 523, 523, 70, 0.3);
+    short[] e = sweep(sampleRate, 659, 659, 70, 0.3);
+    short[] g = sweep(sampleRate, 784, 784, 120, 0.3);
+    sounds[WAVE_CLEARED] = new short[c.length + e.length + g.length];
+    System.arraycopy(c, 0, sounds[WAVE_CLEARED], 0, c.length);
+    System.arraycopy(e, 0, sounds[WAVE_CLEARED], c.length, e.length);
+    System.arraycopy(g, 0, sounds[WAVE_CLEARED], c.length + e.length, g.length);
+    return sounds;
+  }
+
+  /**
+   * Returns a sine tone gliding from one frequency to another, fading in
+   * quickly and then out.
+   *
+   * @param volume peak amplitude, from 0 to 1
+   */
+  private static short[] sweep(int sampleRate, double fromHz, double toHz, int durationMs,
+      double volume) {
+    int length = sampleRate * durationMs / 1000;
+    int attack = sampleRate * ATTACK_MS / 1000;
+    short[] samples = new short[length];
+    double phase = 0;
+    for (int i = 0; i < length; i++) {
+      double t = (double) i / length;
+      phase += 2 * Math.PI * (fromHz + (toHz - fromHz) * t) / sampleRate;
+      double envelope = i < attack ? (double) i / attack : 1 - t;
+      samples[i] = (short) (Math.sin(phase) * envelope * volume * Short.MAX_VALUE);
+    }
+    return samples;
+  }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid used as the broad phase for collision detection. Shapes are
+ * identified by small non-negative integer ids and bucketed by the cell
+ * containing their top left corner, so a shape no bigger than a cell is found
+ * by looking at the cells around a query rectangle. Moving a shape only
+ * touches the grid when it crosses into another cell.
+ *
+ * <p>Shapes outside the grid are clamped into the edge cells. Does not
+ * allocate except when an id beyond the current capacity is inserted.
+ *
+ * @author czhang
+ */
+public class SpatialGrid {
+  private static final int NONE = -1;
+
+  /** Width and height of a cell. Shapes must be no bigger than this. */
+  private final int cellSize;
+
+  /** Number of columns and rows of cells. */
+  private int columns, rows;
+
+  /** First id in each cell, or NONE. */
+  private int[] heads;
+
+  /** Doubly linked list of the ids within a cell, indexed by id. */
+  private int[] next, prev;
+
+  /** Cell containing each id, or NONE if the id is not in the grid. */
+  private int[] cells;
+
+  /** Ids found by the last query. */
+  private int[] results;
+  private int resultCount;
+
+  public SpatialGrid(int cellSize) {
+    this.cellSize = cellSize;
+    next = new int[16];
+    prev = new int[16];
+    cells = new int[16];
+    results = new int[16];
+    Arrays.fill(cells, NONE);
+    resize(0, 0);
+  }
+
+  /**
+   * Resizes the grid to cover a width x height area. Removes all ids.
+   */
+  public void resize(int width, int height) {
+    columns = Math.max(1, (width + cellSize - 1) / cellSize);
+    rows = Math.max(1, (height + cellSize - 1) / cellSize);
+    heads = new int[columns * rows];
+    clear();
+  }
+
+  /**
+   * Removes all ids.
+   */
+  public void clear() {
+    Arrays.fill(heads, NONE);
+    Arrays.fill(cells, NONE);
+  }
+
+  /**
+   * Adds the shape {@code id} with its top left at x,y.
+   */
+  public void insert(int id, int x, int y) {
+    ensureCapacity(id + 1);
+    if (cells[id] != NONE) {
+      remove(id);
+    }
+    link(id, cellOf(x, y));
+  }
+
+  /**
+   * Updates the position of the shape {@code id}, which must be in the grid.
+   */
+  public void move(int id, int x, int y) {
+    int cell = cellOf(x, y);
+    if (cells[id] != cell) {
+      unlink(id);
+      link(id, cell);
+    }
+  }
+
+  /**
+   * Removes the shape {@code id} if it is in the grid.
+   */
+  public void remove(int id) {
+    if (id < cells.length && cells[id] != NONE) {
+      unlink(id);
+    }
+  }
+
+  /**
+   * Finds the ids of all shapes that may overlap the rectangle. Returns the
+   * number found, which can be read with {@link #getResult(int)} until the
+   * next query.
+   */
+  public int query(int left, int top, int right, int bottom) {
+    int minColumn = clampColumn((left - cellSize) / cellSize);
+    int maxColumn = clampColumn((right - 1) / cellSize);
+    int minRow = clampRow((top - cellSize) / cellSize);
+    int maxRow = clampRow((bottom - 1) / cellSize);
+
+    resultCount = 0;
+    for (int row = minRow; row <= maxRow; row++) {
+      for (int column = minColumn; column <= maxColumn; column++) {
+        for (int id = heads[row * columns + column]; id != NONE; id = next[id]) {
+          if (resultCount == results.length) {
+            results = ArrayUtils.copyOf(results, resultCount * 2);
+          }
+          results[resultCount++] = id;
+        }
+      }
+    }
+    return resultCount;
+  }
+
+  /**
+   * Returns the i-th id found by the last query.
+   */
+  public int getResult(int i) {
+    return results[i];
+  }
+
+  /**
+   * Replaces {@code oldId} with {@code newId} in the results of the last
+   * query, for when an id is renumbered while iterating over them.
+   */
+  public void renameResult(int oldId, int newId) {
+    for (int i = 0; i < resultCount; i++) {
+      if (results[i] == oldId) {
+        results[i] = newId;
+      }
+    }
+  }
+
+  private int cellOf(int x, int y) {
+    return clampRow(y / cellSize) * columns + clampColumn(x / cellSize);
+  }
+
+  private int clampColumn(int column) {
+    return column < 0 ? 0 : (column >= columns ? columns - 1 : column);
+  }
+
+  private int clampRow(int row) {
+    return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+  }
+
+  private void link(int id, int cell) {
+    int head = heads[cell];
+    next[id] = head;
+    prev[id] = NONE;
+    if (head != NONE) {
+      prev[head] = id;
+    }
+    heads[cell] = id;
+    cells[id] = cell;
+  }
+
+  private void unlink(int id) {
+    int cell = cells[id];
+    if (prev[id] != NONE) {
+      next[prev[id]] = next[id];
+    } else {
+      heads[cell] = next[id];
+    }
+    if (next[id] != NONE) {
+      prev[next[id]] = prev[id];
+    }
+    cells[id] = NONE;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= cells.length) {
+      return;
+    }
+    int size = Math.max(capacity, cells.length * 2);
+    int oldSize = cells.length;
+    next = ArrayUtils.copyOf(next, size);
+    prev = ArrayUtils.copyOf(prev, size);
+    cells = ArrayUtils.copyOf(cells, size);
+    Arrays.fill(cells, oldSize, size, NONE);
+  }
+}
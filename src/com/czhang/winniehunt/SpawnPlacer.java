@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Picks random positions for new shapes that keep clear of a point, e.g.
+ * Winnie, and optionally of shapes already placed. Takes bounded time
+ * however full the board is: a few random positions are tried, and if none
+ * fits a position outside the clear zone is picked directly, even if it
+ * overlaps another shape.
+ *
+ * @author czhang
+ */
+public class SpawnPlacer {
+  /** Number of random positions tried before falling back. */
+  private static final int MAX_ATTEMPTS = 16;
+
+  private final GameRandom rand;
+
+  /** Top left of the last position placed. */
+  private int x, y;
+
+  public SpawnPlacer(GameRandom rand) {
+    this.rand = rand;
+  }
+
+  public int getX() {
+    return x;
+  }
+
+  public int getY() {
+    return y;
+  }
+
+  /**
+   * Places a size x size shape within a width x height board, with its
+   * center at least {@code radius} from clearX,clearY and not overlapping
+   * any shape in {@code occupants}, found through {@code occupied}. The
+   * position is read with {@link #getX()} and {@link #getY()}.
+   *
+   * @param occupied grid of the shapes in {@code occupants}, or null to
+   *     allow overlaps
+   * @return false if the position could only be kept clear of the point
+   */
+  public boolean place(int width, int height, int size, int clearX, int clearY, int radius,
+      SpatialGrid occupied, EntityStore occupants) {
+    int rangeX = Math.max(1, width - size);
+    int rangeY = Math.max(1, height - size);
+    int half = size / 2;
+    long radiusSquared = (long) radius * radius;
+
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      x = rand.nextInt(rangeX);
+      y = rand.nextInt(rangeY);
+      if (distanceSquared(x + half - clearX, y + half - clearY) >= radiusSquared
+          && !overlapsAny(x, y, size, occupied, occupants)) {
+        return true;
+      }
+    }
+
+    placeOutside(rangeX, rangeY, half, clearX, clearY, radius);
+    return false;
+  }
+
+  /**
+   * Picks a random position and, if it is inside the clear zone, pushes it
+   * straight out to the edge of the zone. If the board is too small for
+   * that, takes the corner furthest from the center of the zone.
+   */
+  private void placeOutside(int rangeX, int rangeY, int half, int clearX, int clearY,
+      int radius) {
+    int centerX = rand.nextInt(rangeX) + half;
+    int centerY = rand.nextInt(rangeY) + half;
+    int dx = centerX - clearX;
+    int dy = centerY - clearY;
+    long radiusSquared = (long) radius * radius;
+    if (distanceSquared(dx, dy) < radiusSquared) {
+      // StrictMath, so replays place shapes the same on every device.
+      double angle = (dx == 0 && dy == 0)
+          ? rand.nextDouble() * 2 * Math.PI
+          : StrictMath.atan2(dy, dx);
+      centerX = clearX + edgeOffset(radius, StrictMath.cos(angle));
+      centerY = clearY + edgeOffset(radius, StrictMath.sin(angle));
+    }
+    x = clamp(centerX - half, rangeX - 1);
+    y = clamp(centerY - half, rangeY - 1);
+
+    if (distanceSquared(x + half - clearX, y + half - clearY) < radiusSquared) {
+      x = clearX - half < rangeX / 2 ? rangeX - 1 : 0;
+      y = clearY - half < rangeY / 2 ? rangeY - 1 : 0;
+    }
+  }
+
+  /**
+   * Returns {@code radius * unit} rounded away from zero, so an offset made
+   * of the cosine and sine of an angle is never inside the radius.
+   */
+  static int edgeOffset(int radius, double unit) {
+    double offset = radius * unit;
+    return offset < 0 ? -(int) Math.ceil(-offset) : (int) Math.ceil(offset);
+  }
+
+  private static boolean overlapsAny(int x, int y, int size, SpatialGrid occupied,
+      EntityStore occupants) {
+    if (occupied == null) {
+      return false;
+    }
+    int found = occupied.query(x, y, x + size, y + size);
+    for (int i = 0; i < found; i++) {
+      int id = occupied.getResult(i);
+      int left = occupants.getLeft(id);
+      int top = occupants.getTop(id);
+      int other = occupants.getEntitySize();
+      if (Hitbox.intersects(x, y, x + size, y + size, left, top, left + other, top + other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long distanceSquared(int dx, int dy) {
+    return (long) dx * dx + (long) dy * dy;
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.max(0, Math.min(value, max));
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+/**
+ * Packs equally sized sprites into a grid on one bitmap, so every shape is
+ * drawn from the same source image. Sprites are identified by their index.
+ * An atlas is created before its images are decoded, showing a placeholder
+ * for each sprite until it is set.
+ *
+ * @author czhang
+ */
+public class SpriteAtlas {
+  /** Empty pixels around each sprite, so filtering never samples a neighbor. */
+  private static final int PADDING = 1;
+
+  /** Color of the disc drawn for sprites that are not set yet. */
+  private static final int PLACEHOLDER_COLOR = Color.GRAY;
+
+  private final Bitmap bitmap;
+
+  /** Size of every sprite, in pixels. */
+  private final int spriteSize;
+
+  /** Area of {@link #bitmap} holding each sprite. */
+  private final Rect[] regions;
+
+  /** Draws into {@link #bitmap}. */
+  private final Canvas canvas;
+
+  /** Replaces the pixels of a cell rather than blending with the placeholder. */
+  private final Paint replacePaint = new Paint();
+
+  /**
+   * Creates an atlas with room for {@code count} sprites of size x size
+   * pixels, each showing a placeholder until {@link #setSprite} is called.
+   */
+  public SpriteAtlas(int count, int size) {
+    spriteSize = size;
+    int cell = size + 2 * PADDING;
+    int columns = (int) Math.ceil(Math.sqrt(count));
+    int rows = (count + columns - 1) / columns;
+
+    bitmap = Bitmap.createBitmap(columns * cell, rows * cell, Bitmap.Config.ARGB_8888);
+    canvas = new Canvas(bitmap);
+    replacePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    Paint placeholderPaint = new Paint();
+    placeholderPaint.setAntiAlias(true);
+    placeholderPaint.setColor(PLACEHOLDER_COLOR);
+    regions = new Rect[count];
+    for (int i = 0; i < count; i++) {
+      int left = (i % columns) * cell + PADDING;
+      int top = (i / columns) * cell + PADDING;
+      regions[i] = new Rect(left, top, left + size, top + size);
+      canvas.drawCircle(left + size / 2f, top + size / 2f, size / 2f, placeholderPaint);
+    }
+  }
+
+  /**
+   * Copies {@code image}, which must be size x size pixels, into the atlas
+   * as the sprite, replacing its placeholder. Must not be called while the
+   * atlas is being drawn from.
+   */
+  public void setSprite(int sprite, Bitmap image) {
+    Rect region = regions[sprite];
+    canvas.drawBitmap(image, region.left, region.top, replacePaint);
+  }
+
+  public Bitmap getBitmap() {
+    return bitmap;
+  }
+
+  public int getSpriteSize() {
+    return spriteSize;
+  }
+
+  public int getSpriteCount() {
+    return regions.length;
+  }
+
+  /**
+   * Returns the area of the atlas bitmap holding the sprite. Must not be modified.
+   */
+  public Rect getRegion(int sprite) {
+    return regions[sprite];
+  }
+
+  /**
+   * Frees the atlas bitmap. It must no longer be drawn.
+   */
+  public void recycle() {
+    bitmap.recycle();
+  }
+}
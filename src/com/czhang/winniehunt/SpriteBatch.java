@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Draws sprites from a {@link SpriteAtlas} onto a canvas with one shared
+ * Paint, skipping sprites that are entirely off the canvas. Use
+ * {@link #begin(Canvas)}, any number of draw calls, then {@link #end()}.
+ *
+ * @author czhang
+ */
+public class SpriteBatch {
+  private final SpriteAtlas atlas;
+
+  /** Paint shared by every sprite. */
+  private final Paint paint;
+
+  /** Scratch destination rectangle. */
+  private final Rect destination = new Rect();
+
+  /** Canvas being drawn to, null outside begin() and end(). */
+  private Canvas canvas;
+  private int canvasWidth, canvasHeight;
+
+  public SpriteBatch(SpriteAtlas atlas) {
+    this.atlas = atlas;
+    paint = new Paint();
+    paint.setAntiAlias(true);
+    paint.setFilterBitmap(true);
+  }
+
+  public Paint getPaint() {
+    return paint;
+  }
+
+  public void begin(Canvas canvas) {
+    this.canvas = canvas;
+    canvasWidth = canvas.getWidth();
+    canvasHeight = canvas.getHeight();
+  }
+
+  /**
+   * Draws the sprite with its top left at x,y, at the size it has in the atlas.
+   */
+  public void draw(int sprite, int x, int y) {
+    int size = atlas.getSpriteSize();
+    if (x >= canvasWidth || y >= canvasHeight || x + size <= 0 || y + size <= 0) {
+      return;
+    }
+    destination.set(x, y, x + size, y + size);
+    canvas.drawBitmap(atlas.getBitmap(), atlas.getRegion(sprite), destination, paint);
+  }
+
+  public void end() {
+    canvas = null;
+  }
+}
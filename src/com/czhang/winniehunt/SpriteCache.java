@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.Map;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Decodes drawables straight to the size they are drawn at and keeps them
+ * for reuse, so every shape of a kind shares one small bitmap instead of
+ * holding a full resolution image that is scaled down on every draw.
+ *
+ * @author czhang
+ */
+public class SpriteCache {
+  private final Resources resources;
+
+  /** Decoded sprites, keyed by resource id and size. */
+  private final Map<Long, Bitmap> sprites = Maps.newHashMap();
+
+  public SpriteCache(Resources resources) {
+    this.resources = resources;
+  }
+
+  /**
+   * Returns the drawable {@code resId} scaled to size x size pixels, decoding
+   * it if it is not cached yet.
+   */
+  public synchronized Bitmap get(int resId, int size) {
+    Long key = ((long) resId << 32) | size;
+    Bitmap sprite = sprites.get(key);
+    if (sprite == null) {
+      sprite = decode(resId, size);
+      sprites.put(key, sprite);
+    }
+    return sprite;
+  }
+
+  /**
+   * Recycles all the cached bitmaps. They must no longer be drawn.
+   */
+  public synchronized void clear() {
+    for (Bitmap sprite : sprites.values()) {
+      sprite.recycle();
+    }
+    sprites.clear();
+  }
+
+  /**
+   * Decodes the drawable {@code resId} to size x size pixels, subsampling
+   * while decoding so the full resolution image is never held in memory.
+   */
+  private Bitmap decode(int resId, int size) {
+    // Read the dimensions of the image without decoding it. Density scaling
+    // is turned off as we scale to the exact size ourselves.
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    options.inScaled = false;
+    BitmapFactory.decodeResource(resources, resId, options);
+
+    options.inJustDecodeBounds = false;
+    options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+    Bitmap decoded = BitmapFactory.decodeResource(resources, resId, options);
+    if (decoded.getWidth() == size && decoded.getHeight() == size) {
+      return decoded;
+    }
+
+    Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+    if (scaled != decoded) {
+      decoded.recycle();
+    }
+    return scaled;
+  }
+
+  /**
+   * Returns the largest power of two sample size that keeps both dimensions
+   * of the decoded image at least {@code size}.
+   */
+  static int sampleSize(int width, int height, int size) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+}
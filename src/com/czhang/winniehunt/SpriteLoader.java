@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Decodes the images of all the shapes on a background thread, so the game
+ * can show its READY screen before they are done. Images are decoded one at
+ * a time: first any that were asked for, as they are on screen, then the
+ * first image of each kind of shape, then the rest.
+ *
+ * <p>There is one loader per process, started as early as possible with
+ * {@link #get(Context)}. It keeps the decoded images, so a new game starts
+ * with all of them ready, until {@link #release()} frees them.
+ *
+ * @author czhang
+ */
+public class SpriteLoader {
+  /**
+   * Size of the image of every shape, in pixels. Shapes are laid out in
+   * canvas pixels, so this is the size they appear on screen.
+   */
+  public static final int SPRITE_SIZE = Carey.SIZE_DP;
+
+  /** Drawables used for each kind of shape. */
+  static final int[] WINNIE_DRAWABLES = new int[] {
+    R.drawable.winnie, R.drawable.winnie2, R.drawable.winnie3, R.drawable.winnie4,
+    R.drawable.winnie5, R.drawable.winnie6, R.drawable.winnie7, R.drawable.winnie8
+  };
+  static final int[] CAREY_DRAWABLES = new int[] {
+    R.drawable.carey, R.drawable.carey2, R.drawable.carey3, R.drawable.carey4,
+    R.drawable.carey5, R.drawable.carey6, R.drawable.carey7
+  };
+  static final int[] TREAT_DRAWABLES = new int[] {
+    R.drawable.treat, R.drawable.treat2, R.drawable.treat3, R.drawable.treat4, R.drawable.treat5
+  };
+
+  /** Index of the first image of each kind of shape: Winnies, then Careys, then treats. */
+  public static final int WINNIE_BASE = 0;
+  public static final int CAREY_BASE = WINNIE_BASE + WINNIE_DRAWABLES.length;
+  public static final int TREAT_BASE = CAREY_BASE + CAREY_DRAWABLES.length;
+  public static final int SPRITE_COUNT = TREAT_BASE + TREAT_DRAWABLES.length;
+
+  private static SpriteLoader instance;
+
+  private final SpriteCache spriteCache;
+
+  /** Drawable of each image, by index. */
+  private final int[] drawables = new int[SPRITE_COUNT];
+
+  /** Order in which images are decoded unless asked for. */
+  private final int[] order = new int[SPRITE_COUNT];
+
+  /** Decoded images, null until ready. */
+  private final AtomicReferenceArray<Bitmap> sprites =
+      new AtomicReferenceArray<Bitmap>(SPRITE_COUNT);
+
+  /** Images asked for that are not decoded yet. Guarded by this. */
+  private final boolean[] requested = new boolean[SPRITE_COUNT];
+  private int requestCount;
+
+  /** If the images are to be freed, and if the loader thread is done. Guarded by this. */
+  private boolean released, finished;
+
+  /**
+   * Returns the loader, creating it and starting to decode if it is the
+   * first call.
+   */
+  public static synchronized SpriteLoader get(Context context) {
+    if (instance == null) {
+      instance = new SpriteLoader(context.getApplicationContext());
+      instance.start();
+    }
+    return instance;
+  }
+
+  private SpriteLoader(Context context) {
+    spriteCache = new SpriteCache(context.getResources());
+    System.arraycopy(WINNIE_DRAWABLES, 0, drawables, WINNIE_BASE, WINNIE_DRAWABLES.length);
+    System.arraycopy(CAREY_DRAWABLES, 0, drawables, CAREY_BASE, CAREY_DRAWABLES.length);
+    System.arraycopy(TREAT_DRAWABLES, 0, drawables, TREAT_BASE, TREAT_DRAWABLES.length);
+
+    // Take turns between the kinds of shapes, so the first image of each
+    // comes before the second of any.
+    int[][] kinds = {WINNIE_DRAWABLES, CAREY_DRAWABLES, TREAT_DRAWABLES};
+    int[] bases = {WINNIE_BASE, CAREY_BASE, TREAT_BASE};
+    int n = 0;
+    for (int i = 0; n < SPRITE_COUNT; i++) {
+      for (int kind = 0; kind < kinds.length; kind++) {
+        if (i < kinds[kind].length) {
+          order[n++] = bases[kind] + i;
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops decoding and frees the images once the loader thread is done with
+   * them. They must no longer be drawn. The next call to {@link #get} starts
+   * a new loader.
+   */
+  public static synchronized void release() {
+    if (instance != null) {
+      instance.stop();
+      instance = null;
+    }
+  }
+
+  private void start() {
+    Thread thread = new Thread("SpriteLoader") {
+      @Override
+      public void run() {
+        for (int sprite = next(); sprite >= 0; sprite = next()) {
+          load(sprite);
+        }
+        finish();
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns the image if it is decoded, otherwise null. Any thread.
+   */
+  public Bitmap poll(int sprite) {
+    return sprites.get(sprite);
+  }
+
+  /**
+   * Asks for the image to be decoded before those not asked for. Does
+   * nothing if it is already decoded.
+   */
+  public synchronized void request(int sprite) {
+    if (!requested[sprite] && sprites.get(sprite) == null) {
+      requested[sprite] = true;
+      requestCount++;
+    }
+  }
+
+  /**
+   * Returns the next image to decode, or -1 when all are done or the loader
+   * is released.
+   */
+  private synchronized int next() {
+    if (released) {
+      return -1;
+    }
+    if (requestCount > 0) {
+      for (int sprite = 0; sprite < SPRITE_COUNT; sprite++) {
+        if (requested[sprite]) {
+          requested[sprite] = false;
+          requestCount--;
+          return sprite;
+        }
+      }
+    }
+    for (int sprite : order) {
+      if (sprites.get(sprite) == null) {
+        return sprite;
+      }
+    }
+    return -1;
+  }
+
+  private void load(int sprite) {
+    // An image asked for while being decoded comes up again, and is then
+    // found in the cache.
+    sprites.set(sprite, spriteCache.get(drawables[sprite], SPRITE_SIZE));
+  }
+
+  private synchronized void stop() {
+    released = true;
+    if (finished) {
+      spriteCache.clear();
+    }
+  }
+
+  /**
+   * Called by the loader thread as it exits. Frees the images if the loader
+   * was released while it was decoding.
+   */
+  private synchronized void finish() {
+    finished = true;
+    if (released) {
+      spriteCache.clear();
+    }
+  }
+}
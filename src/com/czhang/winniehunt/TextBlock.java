@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * A few lines of text in one style, drawn by a {@link Renderer}. The lines
+ * are kept in character buffers, so updating them does not allocate, and a
+ * version number tells renderers that cache the drawn text when it changed.
+ *
+ * @author czhang
+ */
+public class TextBlock {
+  /** Lines start at the x they are drawn at. */
+  public static final int ALIGN_LEFT = 0;
+
+  /** Lines are centered on the x they are drawn at. */
+  public static final int ALIGN_CENTER = 1;
+
+  private final int textSize;
+  private final int lineHeight;
+  private final int align;
+  private final int color;
+
+  private final char[][] lines;
+  private final int[] lengths;
+  private int lineCount;
+
+  /** Bumped whenever the lines change. */
+  private int version;
+
+  /**
+   * @param maxLineLength characters kept per line; longer lines are cut off
+   * @param color ARGB color of the text
+   */
+  public TextBlock(int maxLines, int maxLineLength, int textSize, int lineHeight, int align,
+      int color) {
+    this.textSize = textSize;
+    this.lineHeight = lineHeight;
+    this.align = align;
+    this.color = color;
+    lines = new char[maxLines][maxLineLength];
+    lengths = new int[maxLines];
+  }
+
+  public void clear() {
+    lineCount = 0;
+    version++;
+  }
+
+  /**
+   * Adds a line, ignoring it if the block is full.
+   */
+  public void addLine(CharSequence text) {
+    if (lineCount == lines.length) {
+      return;
+    }
+    char[] line = lines[lineCount];
+    int length = Math.min(text.length(), line.length);
+    for (int i = 0; i < length; i++) {
+      line[i] = text.charAt(i);
+    }
+    lengths[lineCount++] = length;
+    version++;
+  }
+
+  public int getLineCount() {
+    return lineCount;
+  }
+
+  /** Characters of the line, valid up to {@link #getLineLength(int)}. */
+  public char[] getLine(int i) {
+    return lines[i];
+  }
+
+  public int getLineLength(int i) {
+    return lengths[i];
+  }
+
+  public int getTextSize() {
+    return textSize;
+  }
+
+  /** Distance between the baselines of two lines. */
+  public int getLineHeight() {
+    return lineHeight;
+  }
+
+  public int getAlign() {
+    return align;
+  }
+
+  public int getColor() {
+    return color;
+  }
+
+  public int getVersion() {
+    return version;
+  }
+}
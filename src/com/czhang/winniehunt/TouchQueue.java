@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Lock-free queue of touch samples from one producer thread (the UI thread)
+ * to one consumer thread (the game thread). Samples are kept in parallel
+ * primitive arrays, so neither side allocates or blocks.
+ *
+ * @author czhang
+ */
+public class TouchQueue {
+  public static final int ACTION_DOWN = 0;
+  public static final int ACTION_UP = 1;
+  public static final int ACTION_MOVE = 2;
+
+  /**
+   * Receives the samples drained from the queue.
+   */
+  public interface Sink {
+    void onTouch(int action, int x, int y, long timeMs);
+  }
+
+  private final int mask;
+  private final int[] actions, xs, ys;
+  private final long[] times;
+
+  /** Number of samples ever read. Only written by the consumer. */
+  private volatile long head;
+
+  /** Number of samples ever written. Only written by the producer. */
+  private volatile long tail;
+
+  /** Number of samples dropped because the queue was full. */
+  private volatile int dropped;
+
+  /**
+   * Creates a queue holding up to {@code capacity} samples, rounded up to a
+   * power of two.
+   */
+  public TouchQueue(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    mask = size - 1;
+    actions = new int[size];
+    xs = new int[size];
+    ys = new int[size];
+    times = new long[size];
+  }
+
+  /**
+   * Adds a sample. Called by the producer only. Returns false and drops the
+   * sample if the queue is full.
+   */
+  public boolean offer(int action, int x, int y, long timeMs) {
+    long t = tail;
+    if (t - head > mask) {
+      dropped++;
+      return false;
+    }
+    int i = (int) t & mask;
+    actions[i] = action;
+    xs[i] = x;
+    ys[i] = y;
+    times[i] = timeMs;
+    // Publishing the new tail makes the writes above visible to the consumer.
+    tail = t + 1;
+    return true;
+  }
+
+  /**
+   * Passes every queued sample to {@code sink} in order and removes them.
+   * Called by the consumer only. Returns the number of samples drained.
+   */
+  public int drain(Sink sink) {
+    long h = head;
+    long t = tail;
+    for (long n = h; n < t; n++) {
+      int i = (int) n & mask;
+      sink.onTouch(actions[i], xs[i], ys[i], times[i]);
+    }
+    // Publishing the new head lets the producer reuse the slots.
+    head = t;
+    return (int) (t - h);
+  }
+
+  public int getDropped() {
+    return dropped;
+  }
+}
@@ -3,31 +3,56 @@
  */
 package com.czhang.winniehunt;
 
-import android.graphics.Bitmap;
-import android.graphics.Rect;
-
 /**
- * @author czhang
+ * View of a treat stored in an {@link EntityStore}. Only valid until a treat
+ * is removed from the store.
  *
+ * @author czhang
  */
 public class Treat extends OverlapableShape {
   public static final int SIZE_DP = 50;
 
-  private boolean eaten;
+  private final EntityStore store;
+  private int index;
+
+  public Treat(EntityStore store, int index) {
+    this.store = store;
+    this.index = index;
+  }
 
   /**
-   * x and y specify the top left coordinates.
+   * Points this view at another treat in the same store.
    */
-  public Treat(int x, int y, Bitmap bitmap) {
-    super(new Rect(x, y, x + SIZE_DP, y + SIZE_DP), bitmap);
-    eaten = false;
+  public Treat setIndex(int index) {
+    this.index = index;
+    return this;
+  }
+
+  @Override
+  public int getLeft() {
+    return store.getLeft(index);
+  }
+
+  @Override
+  public int getTop() {
+    return store.getTop(index);
+  }
+
+  @Override
+  public int getSize() {
+    return SIZE_DP;
+  }
+
+  @Override
+  public int getSprite() {
+    return store.getSprite(index);
   }
 
   public void setEaten(boolean eaten) {
-    this.eaten = eaten;
+    store.setEaten(index, eaten);
   }
 
   public boolean isEaten() {
-    return eaten;
+    return store.isEaten(index);
   }
 }
@@ -3,9 +3,6 @@
  */
 package com.czhang.winniehunt;
 
-import android.graphics.Bitmap;
-import android.graphics.Rect;
-
 /**
  * @author czhang
  *
@@ -13,17 +10,61 @@ import android.graphics.Rect;
 public class Winnie extends OverlapableShape {
   public static final int SIZE_DP = 50;
 
+  /** Slightly smaller than the image, so grazing a Carey's corner is not a catch. */
+  private static final Hitbox HITBOX = Hitbox.rect(4);
+
+  private final IntRect geometry;
+
+  private int sprite;
+
   /**
    * x,y specify top left.
    */
-  public Winnie(int x, int y, Bitmap bitmap) {
-    super(new Rect(x, y, x + SIZE_DP, y + SIZE_DP), bitmap);
+  public Winnie(int x, int y, int sprite) {
+    geometry = new IntRect(x, y, x + SIZE_DP, y + SIZE_DP);
+    this.sprite = sprite;
+  }
+
+  @Override
+  public int getLeft() {
+    return geometry.left;
+  }
+
+  @Override
+  public int getTop() {
+    return geometry.top;
+  }
+
+  @Override
+  public int getSize() {
+    return SIZE_DP;
+  }
+
+  @Override
+  public int getSprite() {
+    return sprite;
+  }
+
+  public void setSprite(int sprite) {
+    this.sprite = sprite;
+  }
+
+  @Override
+  public Hitbox getHitbox() {
+    return HITBOX;
   }
 
   /**
    * x,y specify center coordinates.
    */
   public void moveTo(int x, int y) {
-    geometry = new Rect(x - SIZE_DP / 2, y - SIZE_DP / 2, x + SIZE_DP / 2, y + SIZE_DP / 2);
+    geometry.set(x - SIZE_DP / 2, y - SIZE_DP / 2, x + SIZE_DP / 2, y + SIZE_DP / 2);
+  }
+
+  /**
+   * x,y specify top left.
+   */
+  public void setPosition(int x, int y) {
+    geometry.set(x, y, x + SIZE_DP, y + SIZE_DP);
   }
 }
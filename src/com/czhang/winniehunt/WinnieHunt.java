@@ -1,51 +1,278 @@
 package com.czhang.winniehunt;
 
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
+import android.content.res.AssetFileDescriptor;
 import android.media.MediaPlayer;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.Toast;
 
 public class WinnieHunt extends Activity {
 
   public static final String TAG = "winniehunt";
 
+  /** Options menu item ids. */
+  private static final int MENU_HI = 0;
+  private static final int MENU_STATS = 1;
+  private static final int MENU_DUMP_STATS = 2;
+  private static final int MENU_DIRTY_RENDERING = 3;
+
+  /** Keys of the saved game in the instance state. */
+  private static final String KEY_WORLD = "world";
+  private static final String KEY_WORLD_IN_FILE = "worldInFile";
+
+  /**
+   * Largest saved game kept in the instance state, which is passed through
+   * a binder transaction of at most 1MB. Larger ones go to a file.
+   */
+  private static final int MAX_INSTANCE_STATE_WORLD_BYTES = 64 * 1024;
+
+  /** File in the app's files directory a large saved game is written to. */
+  private static final String WORLD_FILE = "saved.world";
+
   /** Handle to view in which game is running. **/
   private ControllerView gameView;
 
   /** MediaPlayer used to play the background music. **/
   private MediaPlayer mediaPlayer;
 
+  /**
+   * If {@link #mediaPlayer} has started preparing, is prepared, and if the
+   * music should be playing.
+   */
+  private boolean musicPreparing, musicPrepared, musicWanted;
+
+  /** Plays the music if the game is not paused. Run on the UI thread. */
+  private final Runnable resumeMusic = new Runnable() {
+    @Override
+    public void run() {
+      // The game may have been paused again since this was posted.
+      if (gameView != null && !gameView.getThread().isPaused()) {
+        setMusicPlaying(true);
+      }
+    }
+  };
+
   @Override
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    setContentView(R.layout.controller_view);
     setContentView(R.layout.activity_main);
 
-    // Initialize media player.
-    mediaPlayer = MediaPlayer.create(this, R.raw.music_background);
+    // Start decoding the images while the title screen is up.
+    SpriteLoader.get(this);
+
+    // Carry on with the game the activity was showing before it was killed.
+    byte[] savedWorld = readSavedWorld(savedInstanceState);
+    if (savedWorld != null) {
+      showGame();
+      try {
+        gameView.getThread().restoreWorld(savedWorld);
+      } catch (IOException e) {
+        Log.w(TAG, "Could not restore the game", e);
+        gameView.getThread().doStart();
+      }
+    }
+
+    // The music is only prepared once the game starts, so the title screen
+    // doesn't wait on it.
+    mediaPlayer = new MediaPlayer();
     mediaPlayer.setLooping(true);
+    mediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+      @Override
+      public void onPrepared(MediaPlayer player) {
+        musicPrepared = true;
+        if (musicWanted) {
+          player.start();
+        }
+      }
+    });
+  }
+
+  /**
+   * Starts preparing the music in the background. It starts playing once
+   * prepared if it is still wanted by then.
+   */
+  private void prepareMusic() {
+    musicPreparing = true;
+    try {
+      AssetFileDescriptor music = getResources().openRawResourceFd(R.raw.music_background);
+      try {
+        mediaPlayer.setDataSource(music.getFileDescriptor(), music.getStartOffset(),
+            music.getLength());
+      } finally {
+        music.close();
+      }
+      mediaPlayer.prepareAsync();
+    } catch (IOException e) {
+      // Play without music.
+      Log.w(TAG, "Could not open the music", e);
+    }
+  }
+
+  /**
+   * Starts or pauses the music, once it is prepared.
+   */
+  private void setMusicPlaying(boolean playing) {
+    musicWanted = playing;
+    if (playing && !musicPreparing) {
+      prepareMusic();
+    }
+    if (!musicPrepared) {
+      return;
+    }
+    if (playing) {
+      mediaPlayer.start();
+    } else {
+      mediaPlayer.pause();
+    }
+  }
+
+  /**
+   * Returns the game saved by onSaveInstanceState(), or null if there is
+   * none. A game saved to a file is only read once.
+   */
+  private byte[] readSavedWorld(Bundle savedInstanceState) {
+    if (savedInstanceState == null) {
+      return null;
+    }
+    byte[] savedWorld = savedInstanceState.getByteArray(KEY_WORLD);
+    if (savedWorld != null || !savedInstanceState.getBoolean(KEY_WORLD_IN_FILE)) {
+      return savedWorld;
+    }
+    File file = new File(getFilesDir(), WORLD_FILE);
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        savedWorld = new byte[(int) file.length()];
+        in.readFully(savedWorld);
+        return savedWorld;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Could not read " + file, e);
+      return null;
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Override
+  protected void onSaveInstanceState(Bundle outState) {
+    super.onSaveInstanceState(outState);
+    if (gameView == null) {
+      return;
+    }
+    byte[] savedWorld = gameView.getThread().saveWorld();
+    if (savedWorld == null) {
+      return;
+    }
+    if (savedWorld.length <= MAX_INSTANCE_STATE_WORLD_BYTES) {
+      outState.putByteArray(KEY_WORLD, savedWorld);
+      return;
+    }
+    File file = new File(getFilesDir(), WORLD_FILE);
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(savedWorld);
+      } finally {
+        out.close();
+      }
+      outState.putBoolean(KEY_WORLD_IN_FILE, true);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write " + file, e);
+    }
   }
 
   @Override
   public boolean onCreateOptionsMenu(Menu menu) {
     super.onCreateOptionsMenu(menu);
-    menu.add(0, 0, 0, R.string.menu_hi);
+    menu.add(0, MENU_HI, 0, R.string.menu_hi);
+    menu.add(0, MENU_STATS, 1, R.string.menu_stats).setCheckable(true);
+    menu.add(0, MENU_DUMP_STATS, 2, R.string.menu_dump_stats);
+    menu.add(0, MENU_DIRTY_RENDERING, 3, R.string.menu_dirty_rendering).setCheckable(true);
     return true;
   }
 
   @Override
   public void onDestroy() {
     mediaPlayer.release();
+    // Keep the images across a rotation, but not once the game is closed.
+    if (isFinishing()) {
+      SpriteLoader.release();
+    }
     super.onDestroy();
   }
 
   @Override
   public boolean onOptionsItemSelected(MenuItem item) {
-    // Only one item, so just do that one thing.
+    switch (item.getItemId()) {
+      case MENU_STATS:
+        // The stats only exist once the game has started.
+        if (gameView != null) {
+          boolean visible = !gameView.getThread().isHudVisible();
+          gameView.getThread().setHudVisible(visible);
+          item.setChecked(visible);
+        }
+        return true;
+      case MENU_DIRTY_RENDERING:
+        if (gameView != null) {
+          boolean dirty = !gameView.getThread().isDirtyRendering();
+          gameView.getThread().setDirtyRendering(dirty);
+          item.setChecked(dirty);
+        }
+        return true;
+      case MENU_DUMP_STATS:
+        if (gameView != null) {
+          dumpStats();
+        }
+        return true;
+      default:
+        showHi();
+        return true;
+    }
+  }
+
+  /**
+   * Writes the frame time histograms and drop counts to a file QA can pull
+   * off the device, in the app's external files directory if there is one.
+   */
+  private void dumpStats() {
+    File dir = getExternalFilesDir(null);
+    if (dir == null) {
+      dir = getFilesDir();
+    }
+    File file = new File(dir, "frame-stats-" + System.currentTimeMillis() + ".txt");
+    try {
+      PrintWriter out = new PrintWriter(new FileWriter(file));
+      try {
+        gameView.getThread().dumpStats(out);
+      } finally {
+        out.close();
+      }
+      Toast.makeText(this, getString(R.string.stats_dumped, file.getPath()),
+          Toast.LENGTH_LONG).show();
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write " + file, e);
+      Toast.makeText(this, R.string.stats_dump_failed, Toast.LENGTH_LONG).show();
+    }
+  }
+
+  private void showHi() {
     AlertDialog.Builder builder = new AlertDialog.Builder(this);
     builder.setMessage(R.string.alert_hi)
        .setCancelable(false)
@@ -63,23 +290,37 @@ public class WinnieHunt extends Activity {
        });
     builder.create();
     builder.show();
-    return true;
   }
 
   /**
    * Handles when the start button is clicked.
    */
   public void onStartButtonClick(View view) {
-    setContentView(R.layout.controller_view);
-
-    // Get handle to the game view.
-    gameView = (ControllerView) findViewById(R.id.controllerView);
+    showGame();
 
     // Start the thread.
     gameView.getThread().doStart();
 
     // Start playing the music.
-    mediaPlayer.start();
+    setMusicPlaying(true);
+  }
+
+  /**
+   * Replaces the title screen with the game view.
+   */
+  private void showGame() {
+    setContentView(R.layout.controller_view);
+
+    // Get handle to the game view.
+    gameView = (ControllerView) findViewById(R.id.controllerView);
+
+    // The music stops while paused, and plays again once tapped to resume.
+    gameView.getThread().setResumeListener(new Runnable() {
+      @Override
+      public void run() {
+        runOnUiThread(resumeMusic);
+      }
+    });
   }
 
   /**
@@ -89,7 +330,21 @@ public class WinnieHunt extends Activity {
   protected void onPause() {
     super.onPause();
 
-    // We don't handle pause and resume, so we just destroy.
-    finish();
+    // Freeze the game. Its thread parks until the surface comes back.
+    if (gameView != null) {
+      gameView.getThread().pause();
+      setMusicPlaying(false);
+    }
+  }
+
+  /**
+   * Invoked when the Activity gets user focus back. The game stays paused
+   * until the screen is tapped, and the music with it; a game restored in
+   * another state plays it straight away.
+   */
+  @Override
+  protected void onResume() {
+    super.onResume();
+    resumeMusic.run();
   }
 }
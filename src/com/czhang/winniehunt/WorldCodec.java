@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+import java.io.IOException;
+
+/**
+ * Saves the whole state of a {@link GameWorld} to a compact byte array and
+ * restores it, so a game interrupted e.g. by a phone call carries on where
+ * it was even if the process was killed in the meantime.
+ *
+ * <p>The format is a header (magic, version, sprite counts) followed by the
+ * world: random state, game state, counters, canvas size, Winnie, then the
+ * treats and Careys. Numbers are varints, signed ones zigzag encoded, so a
+ * Carey typically takes 7 bytes. Previous positions are not saved, so
+ * restored shapes are not interpolated until they are next stepped.
+ *
+ * @author czhang
+ */
+public class WorldCodec {
+  static final int MAGIC = 0x57485356; // "WHSV"
+  /** Bumped whenever the format or the meaning of the world's fields changes. */
+  static final int VERSION = 1;
+
+  /** Most bytes the header and the fixed fields take, before the shapes. */
+  private static final int FIXED_BYTES = 128;
+
+  /** Most bytes a shape takes: up to five varints of up to 5 bytes. */
+  private static final int MAX_SHAPE_BYTES = 5 * 5;
+
+  private final byte[] buffer;
+  private int position;
+
+  private WorldCodec(byte[] buffer) {
+    this.buffer = buffer;
+  }
+
+  /**
+   * Returns the state of the world, which must be laid out.
+   */
+  public static byte[] encode(GameWorld world) {
+    Winnie winnie = world.getWinnie();
+    if (winnie == null) {
+      throw new IllegalStateException("World not laid out");
+    }
+    EntityStore treats = world.getTreats();
+    EntityStore careys = world.getCareys();
+    WorldCodec out = new WorldCodec(
+        new byte[FIXED_BYTES + (treats.size() + careys.size()) * MAX_SHAPE_BYTES]);
+
+    out.writeInt(MAGIC);
+    out.writeVarint(VERSION);
+    out.writeVarint(world.getNumWinnieSprites());
+    out.writeVarint(world.getNumCareySprites());
+    out.writeVarint(world.getNumTreatSprites());
+
+    out.writeLong(world.getRandomState());
+    out.writeVarint(world.getState().ordinal());
+    // The state before pausing is kept after unpausing, but only means
+    // anything while paused.
+    out.writeVarint(world.getState() == GameWorld.State.PAUSE
+        ? world.getStateBeforePause().ordinal() + 1 : 0);
+    out.writeVarint(world.getCareyImageIndex());
+    out.writeVarint(world.getWave());
+    out.writeVarint(world.getScore());
+    out.writeVarint(world.getCanvasWidth());
+    out.writeVarint(world.getCanvasHeight());
+    out.writeSigned(winnie.getLeft());
+    out.writeSigned(winnie.getTop());
+    out.writeVarint(winnie.getSprite());
+
+    out.writeVarint(treats.size());
+    for (int i = 0; i < treats.size(); i++) {
+      out.writeSigned(treats.getLeft(i));
+      out.writeSigned(treats.getTop(i));
+      out.writeVarint(treats.getSprite(i));
+    }
+    out.writeVarint(careys.size());
+    for (int i = 0; i < careys.size(); i++) {
+      out.writeSigned(careys.getLeft(i));
+      out.writeSigned(careys.getTop(i));
+      out.writeSigned(careys.getDx(i));
+      out.writeSigned(careys.getDy(i));
+      out.writeVarint(careys.getSprite(i));
+    }
+    return ArrayUtils.copyOf(out.buffer, out.position);
+  }
+
+  /**
+   * Replaces the state of the world with the one in {@code data}. Throws,
+   * leaving the world unchanged, if the data is not a valid state for it,
+   * e.g. saved by a version of the game with other images.
+   */
+  public static void decode(byte[] data, GameWorld world) throws IOException {
+    WorldCodec in = new WorldCodec(data);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a saved world");
+    }
+    int version = in.readVarint();
+    if (version != VERSION) {
+      throw new IOException("Unsupported saved world version " + version);
+    }
+    int numWinnieSprites = in.readVarint();
+    int numCareySprites = in.readVarint();
+    int numTreatSprites = in.readVarint();
+    if (numWinnieSprites != world.getNumWinnieSprites()
+        || numCareySprites != world.getNumCareySprites()
+        || numTreatSprites != world.getNumTreatSprites()) {
+      throw new IOException("Saved with other images");
+    }
+
+    long randomState = in.readLong();
+    GameWorld.State[] states = GameWorld.State.values();
+    GameWorld.State state = states[in.readBounded(states.length)];
+    int stateBeforePause = in.readBounded(states.length + 1);
+    // Only a paused world has a state to return to, and it is not PAUSE.
+    if ((state == GameWorld.State.PAUSE) != (stateBeforePause != 0)
+        || stateBeforePause == GameWorld.State.PAUSE.ordinal() + 1) {
+      throw new IOException("Invalid state before pause: " + stateBeforePause);
+    }
+    int careyImageIndex = in.readBounded(numCareySprites);
+    int wave = in.readVarint();
+    int score = in.readVarint();
+    int width = in.readVarint();
+    int height = in.readVarint();
+    int winnieLeft = in.readSigned();
+    int winnieTop = in.readSigned();
+    int winnieSprite = in.readBounded(numWinnieSprites);
+
+    // Each shape takes at least a byte per field.
+    EntityStore treats = new EntityStore(Treat.SIZE_DP);
+    int treatCount = in.readBounded(data.length / 3 + 1);
+    for (int i = 0; i < treatCount; i++) {
+      int left = in.readSigned();
+      int top = in.readSigned();
+      treats.add(left, top, 0, 0, in.readBounded(numTreatSprites));
+    }
+    EntityStore careys = new EntityStore(Carey.SIZE_DP);
+    int careyCount = in.readBounded(data.length / 5 + 1);
+    for (int i = 0; i < careyCount; i++) {
+      int left = in.readSigned();
+      int top = in.readSigned();
+      int dx = in.readSigned();
+      int dy = in.readSigned();
+      careys.add(left, top, dx, dy, in.readBounded(numCareySprites));
+    }
+
+    world.restore(randomState, state,
+        stateBeforePause == 0 ? null : states[stateBeforePause - 1], careyImageIndex, wave,
+        score, width, height, winnieLeft, winnieTop, winnieSprite, treats, careys);
+  }
+
+  private void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[position++] = (byte) value;
+  }
+
+  private void writeSigned(int value) {
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  private void writeInt(int value) {
+    buffer[position++] = (byte) (value >>> 24);
+    buffer[position++] = (byte) (value >>> 16);
+    buffer[position++] = (byte) (value >>> 8);
+    buffer[position++] = (byte) value;
+  }
+
+  private void writeLong(long value) {
+    writeInt((int) (value >>> 32));
+    writeInt((int) value);
+  }
+
+  private int readByte() throws IOException {
+    if (position >= buffer.length) {
+      throw new IOException("Saved world truncated");
+    }
+    return buffer[position++] & 0xFF;
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  /**
+   * Reads a varint that must be at least 0 and less than {@code bound}.
+   */
+  private int readBounded(int bound) throws IOException {
+    int value = readVarint();
+    if (value < 0 || value >= bound) {
+      throw new IOException("Value out of range: " + value);
+    }
+    return value;
+  }
+
+  private int readSigned() throws IOException {
+    int value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private int readInt() throws IOException {
+    return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+  }
+
+  private long readLong() throws IOException {
+    return (long) readInt() << 32 | (readInt() & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2012, Carey Zhang.
+ */
+package com.czhang.winniehunt;
+
+/**
+ * Copy of everything needed to draw the world at one point in time, so the
+ * world can be drawn on one thread while it is stepped on another. Snapshots
+ * are reused; see {@link SnapshotExchange}.
+ *
+ * @author czhang
+ */
+public class WorldSnapshot {
+  private final EntityStore careys = new EntityStore(Carey.SIZE_DP);
+  private final EntityStore treats = new EntityStore(Treat.SIZE_DP);
+
+  private boolean hasWinnie;
+  private int winnieLeft, winnieTop, winnieSprite;
+
+  private GameWorld.State state = GameWorld.State.READY;
+  private int wave, score;
+  private int canvasWidth, canvasHeight;
+
+  /** Time of the last tick included, and the duration of a tick, in nanoseconds. */
+  private long tickTime, tickNanos;
+
+  /**
+   * Copies the world into this snapshot.
+   *
+   * @param tickTime time at which the last tick of the world happened
+   * @param tickNanos duration of a tick
+   */
+  public void copyFrom(GameWorld world, long tickTime, long tickNanos) {
+    careys.copyFrom(world.getCareys());
+    treats.copyFrom(world.getTreats());
+    Winnie winnie = world.getWinnie();
+    hasWinnie = winnie != null;
+    if (hasWinnie) {
+      winnieLeft = winnie.getLeft();
+      winnieTop = winnie.getTop();
+      winnieSprite = winnie.getSprite();
+    }
+    state = world.getState();
+    wave = world.getWave();
+    score = world.getScore();
+    canvasWidth = world.getCanvasWidth();
+    canvasHeight = world.getCanvasHeight();
+    this.tickTime = tickTime;
+    this.tickNanos = tickNanos;
+  }
+
+  /**
+   * Returns how far between the second to last and the last tick the world
+   * should be drawn at time {@code now}, between 0 and 1. Drawing runs up to
+   * a tick behind the simulation so that it can always interpolate.
+   */
+  public float alphaAt(long now) {
+    if (tickNanos <= 0 || now <= tickTime) {
+      return 0;
+    }
+    return Math.min(1f, (float) (now - tickTime) / tickNanos);
+  }
+
+  public EntityStore getCareys() {
+    return careys;
+  }
+
+  public EntityStore getTreats() {
+    return treats;
+  }
+
+  public boolean hasWinnie() {
+    return hasWinnie;
+  }
+
+  public int getWinnieLeft() {
+    return winnieLeft;
+  }
+
+  public int getWinnieTop() {
+    return winnieTop;
+  }
+
+  public int getWinnieSprite() {
+    return winnieSprite;
+  }
+
+  public GameWorld.State getState() {
+    return state;
+  }
+
+  public int getWave() {
+    return wave;
+  }
+
+  public int getScore() {
+    return score;
+  }
+
+  public int getCanvasWidth() {
+    return canvasWidth;
+  }
+
+  public int getCanvasHeight() {
+    return canvasHeight;
+  }
+}